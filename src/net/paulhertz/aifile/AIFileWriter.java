@@ -29,6 +29,8 @@ import java.util.Date;
 import java.util.Locale;
 // import java.util.ListIterator;
 
+import net.paulhertz.geom.RectClipper;
+
 
 /**
  * @author Paul Hertz
@@ -104,6 +106,8 @@ public class AIFileWriter {
 	/** optional transparency flag, for export to AI. Transparency is not part of the AI 7.0 spec, but we try to support it. */
 	// TODO moved this to AIFileWriter from BezShape, it is only relevant when exporting (DONE)
 	protected static boolean useTransparency = false;
+	/** optional rectangle that geometry is clipped to as it is written, null if there is none */
+	protected static RectClipper clipRect = null;
 	
 	// DecimalFormat sets formatting conventions from the local system, unless we tell it not to
 	// make sure we use "." for decimal separator, as in US, not a comma, as in many other countries 
@@ -618,6 +622,41 @@ void testDecimalFormat() {
 	public static void setUseTransparency(boolean useTransparency) {
 		AIFileWriter.useTransparency = useTransparency;
 	}
+	/**
+	 * @return the rectangle that geometry is clipped to as it is written, or null if there is none.
+	 */
+	public static RectClipper clipRect() {
+		return AIFileWriter.clipRect;
+	}
+	/**
+	 * Sets a rectangle to clip geometry to as it is written, for example to crop a document to its artboard. 
+	 * Each {@link BezShape} is tested against the rectangle as it is written: shapes outside it are skipped, shapes 
+	 * inside it are written unchanged, and only shapes that cross it are clipped, so off-artboard geometry never 
+	 * reaches the file. Coordinates are those of the geometry as it is written. Text is not clipped.
+	 * {@link DocumentComponent#setClipRect(BezRectangle)} sets the rectangle for you while a document is written, 
+	 * and then restores the one that was set before.
+	 * @param left     left edge of the clipping rectangle
+	 * @param top      top edge, the smaller y-coordinate
+	 * @param right    right edge
+	 * @param bottom   bottom edge, the larger y-coordinate
+	 */
+	public static void setClipRect(float left, float top, float right, float bottom) {
+		AIFileWriter.clipRect = RectClipper.makeRectClipper(left, top, right, bottom);
+	}
+	/**
+	 * Sets the rectangle to clip geometry to as it is written, or stops clipping if {@code clipper} is null. 
+	 * Use it to restore a rectangle obtained from {@link #clipRect()}.
+	 * @param clipper   a RectClipper, or null
+	 */
+	public static void setClipRect(RectClipper clipper) {
+		AIFileWriter.clipRect = clipper;
+	}
+	/**
+	 * Stops clipping geometry as it is written.
+	 */
+	public static void clearClipRect() {
+		AIFileWriter.clipRect = null;
+	}
 	/**
 	 * Writes current opacity to an Illustrator file (not part of the AI7 spec).
 	 * This particular operator is pieced together from inspecting AI files
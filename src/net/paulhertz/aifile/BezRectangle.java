@@ -512,6 +512,15 @@ public class BezRectangle extends BezShape {
 		update();
 	}
 
+	/* (non-Javadoc)
+	 * @see net.paulhertz.aifile.BezShape#transformDeferred(net.paulhertz.geom.Matrix3)
+	 */
+	@Override
+	protected void transformDeferred(Matrix3 matx) {
+		super.transformDeferred(matx);
+		update();
+	}
+
 	/* (non-Javadoc)
 	 * @see net.paulhertz.aifile.BezShape#translateShape(float, float)
 	 */
@@ -22,8 +22,14 @@ import java.util.*;
 import java.awt.geom.*;
 import java.io.PrintWriter;
 
+import net.paulhertz.geom.ArcLengthTable;
+import net.paulhertz.geom.BezierUtils;
+import net.paulhertz.geom.CurveFitter;
 import net.paulhertz.geom.GeomUtils;
 import net.paulhertz.geom.Matrix3;
+import net.paulhertz.geom.PathSimplifier;
+import net.paulhertz.geom.PolygonLocator;
+import net.paulhertz.geom.RectClipper;
 
 
 import processing.core.*;
@@ -124,8 +130,16 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	private float[] xcoords;
 	/** y-coordinate array */
 	private float[] ycoords;
-	/** default number of steps in curve segment as polyline */
+	/** edge table for point-in-shape tests, built from xcoords and ycoords when first needed */
+	private PolygonLocator locator;
+	/** cumulative lengths along the shape, built when first needed */
+	private ArcLengthTable arcLengths;
+	/** default number of steps in curve segment as polyline, used when {@code flatness} is 0 */
 	protected int polySteps = 16;
+	/** maximum distance between a curve segment and its polyline in the default polygon, 0 to divide curves into {@code polySteps} */
+	protected float flatness = 0.15f;
+	/** polyline last used in level of detail drawing, with the tolerance it was built for, null until needed */
+	private volatile LodPolygon lodPolygon;
 	/** bounding rectangle of this shape */
 	private BezRectangle boundsRect;
 	/** flag for line segment type, associated with LineVertex */
@@ -175,7 +189,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 		this.setColors();
 		this.setCtm(parent);
 		this.setBezType(BezType.BEZ_PATH);
-	   	this.id = DisplayComponent.counter++;
+	   	this.id = DisplayComponent.nextId();
 	}
 
 	
@@ -340,6 +354,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @see java.lang.Object#clone
 	 */
 	public BezShape clone() {
+		this.applyPendingTransform();
 		BezShape copyThis = new BezShape(parent, this.x, this.y);
 		if (this.hasCenter()) copyThis.setCenter(this.xctr, this.yctr);
 		copyThis.setIsClosed(this.isClosed());
@@ -417,7 +432,9 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @param vt   a Vertex2DINF (line segment or curve segment)
 	 */
 	public void append(Vertex2DINF vt) {
+		this.applyPendingTransform();
 		curves.add(vt);
+		this.nullCoords();
 	}
 
 	/**
@@ -493,6 +510,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 */
 	public void setIsClosed(boolean newIsClosed) {
 		isClosed = newIsClosed;
+		this.appearanceChanged(this);
 	}
 
 
@@ -548,6 +566,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 */
 	public void setHasFill(boolean newHasFill) {
 		hasFill = newHasFill;
+		this.appearanceChanged(this);
 	}
 	/**
 	 * Equivalent to setHasFill(false).
@@ -570,6 +589,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 */
 	public void setHasStroke(boolean newHasStroke) {
 		hasStroke = newHasStroke;
+		this.appearanceChanged(this);
 	}
 	/**
 	 * Equivalent to setHasStroke(false).
@@ -676,6 +696,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 */
 	public void setWeight(float newWeight) {
 		weight = newWeight;
+		this.appearanceChanged(this);
 	}
 
 
@@ -703,6 +724,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
    */
   public void setIsMarked(boolean newIsMarked) {
     isMarked = newIsMarked;
+    this.appearanceChanged(this);
   }
 
 	
@@ -718,6 +740,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @return   x-coordinate of initial vertex
 	 */
 	public float x() {
+		this.applyPendingTransform();
 		return x;
 	}
 	/**
@@ -725,7 +748,9 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @param newX   new x-coordinate of initial vertex
 	 */
 	public void setX(float newX) {
+		this.applyPendingTransform();
 		x = newX;
+		this.nullCoords();
 	}
 
 
@@ -734,6 +759,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @return   y-coordinate of initial vertex
 	 */
 	public float y() {
+		this.applyPendingTransform();
 		return y;
 	}
 	/**
@@ -741,13 +767,16 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @param newY   new y-coordinate of initial vertex
 	 */
 	public void setY(float newY) {
+		this.applyPendingTransform();
 		y = newY;
+		this.nullCoords();
 	}
 	
 	/**
 	 * @return   a LineVertex with start point coordinates of this shape 
 	 */
 	public LineVertex startVertex() {
+		this.applyPendingTransform();
 		return new LineVertex(this.x, this.y);
 	}
 
@@ -755,8 +784,10 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @param startPoint the startPoint to set
 	 */
 	public void setStartPoint(LineVertex startPoint) {
+		this.applyPendingTransform();
 		this.x = startPoint.x;
 		this.y = startPoint.y;
+		this.nullCoords();
 	}
 	/**
 	 * Sets a new initial vertex for this BezShape.
@@ -782,6 +813,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @since Oct. 20, 2011 renamed from startVertex to startVertexArray
 	 */
 	public float[] startVertexArray() {
+		this.applyPendingTransform();
 		float[] pt = new float[2];
 		pt[0] = this.x;
 		pt[1] = this.y;
@@ -929,7 +961,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	/**
 	 * Returns the average of the x- and y-coordinates of this shape as a {@code LineVertex}.
 	 * The result is an approximation based on the derived polygon. Accuracy can be improved by first 
-	 * calling asPolygon with an argument greater than the default of 16 segments per curve.
+	 * calling {@link #setFlatness(float) setFlatness} with a value less than the default of 0.15.
 	 * @return   a LineVertex at the geometric mean of the points of this shape
 	 */
 	public LineVertex getGeoCenter() {
@@ -961,6 +993,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @return an iterator over the Vertex2DINF segments that comprise the geometry of this shape
 	 */
 	public ListIterator <Vertex2DINF> curveIterator() {
+		this.applyPendingTransform();
 		return curves.listIterator();
 	}
 	
@@ -970,10 +1003,11 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * you can obtain that separately from {@link #startVertex()} or from {@link #x()} and {@link #y()}. 
 	 * @return an ArrayList with all the Vertex2DINF segments that compose this shape, in order appended
 	 * Use with caution, changing geometry directly instead of with {@link #transform()} and other
-	 * built-in methods can have unexpected consequences.
+	 * built-in methods can have unexpected consequences: call {@link #invalidateGeometry()} when you are done.
 	 * Call curvesCopy instead. 
 	 */
 	public ArrayList<Vertex2DINF> curves() {
+		this.applyPendingTransform();
 		return curves;
 	}
 	/**
@@ -984,6 +1018,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @since  October 3, 2011
 	 */
 	public ArrayList<Vertex2DINF> curvesCopy() {
+		this.applyPendingTransform();
 		ArrayList<Vertex2DINF> curvesCopy = new ArrayList<Vertex2DINF>(curves.size());
 		for (Vertex2DINF vt : curves) {			
 			curvesCopy.add(vt.clone());
@@ -1000,7 +1035,9 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * Use with caution. 
 	 */
 	public void setCurves(ArrayList<Vertex2DINF> newCurves) {
+		this.applyPendingTransform();
 		curves = newCurves;
+		this.nullCoords();
 	}
 	
 	
@@ -1054,15 +1091,183 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	}
 
 
+	/**
+	 * Returns the geometry of this shape as a Java2D path, with curves kept as cubic curves and the even-odd winding rule. 
+	 * The path is closed if this shape is closed.
+	 * @return   a new {@code Path2D.Float}
+	 */
+	public Path2D.Float toPath() {
+		ListIterator<Vertex2DINF> it = curveIterator();
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_EVEN_ODD, this.curves.size() + 2);
+		path.moveTo(this.x, this.y);
+		while (it.hasNext()) {
+			Vertex2DINF vt = it.next();
+			if (CURVE_SEGMENT == vt.segmentType()) {
+				float[] knots = vt.coords();
+				path.curveTo(knots[0], knots[1], knots[2], knots[3], knots[4], knots[5]);
+			}
+			else {
+				path.lineTo(vt.x(), vt.y());
+			}
+		}
+		if (this.isClosed()) path.closePath();
+		return path;
+	}
+	
+	/**
+	 * Returns the union of this shape and another, see {@link ShapeBoolean}.
+	 * @param shape   another BezShape
+	 * @return   one shape for each region, with its holes, of the area covered by either shape, styled like this shape
+	 */
+	public ArrayList<BezShape> union(BezShape shape) {
+		return ShapeBoolean.union(this, shape);
+	}
+	/**
+	 * Returns the intersection of this shape and another, see {@link ShapeBoolean}.
+	 * @param shape   another BezShape
+	 * @return   one shape for each region, with its holes, of the area covered by both shapes, styled like this shape
+	 */
+	public ArrayList<BezShape> intersection(BezShape shape) {
+		return ShapeBoolean.intersection(this, shape);
+	}
+	/**
+	 * Returns this shape minus another, see {@link ShapeBoolean}.
+	 * @param shape   another BezShape
+	 * @return   one shape for each region, with its holes, of the area covered by this shape and not the other, styled like this shape
+	 */
+	public ArrayList<BezShape> difference(BezShape shape) {
+		return ShapeBoolean.difference(this, shape);
+	}
+	/**
+	 * Returns the exclusive or of this shape and another, see {@link ShapeBoolean}.
+	 * @param shape   another BezShape
+	 * @return   one shape for each region, with its holes, of the area covered by one shape or the other but not both, styled like this shape
+	 */
+	public ArrayList<BezShape> xor(BezShape shape) {
+		return ShapeBoolean.xor(this, shape);
+	}
+
+	/**
+	 * Clips this shape to a rectangle, see {@link #clip(float, float, float, float)}.
+	 * @param rect   the clipping rectangle
+	 * @return   the parts of this shape inside the rectangle, styled like this shape
+	 */
+	public ArrayList<BezShape> clip(BezRectangle rect) {
+		return this.clip(rect.getLeft(), rect.getTop(), rect.getRight(), rect.getBottom());
+	}
+	/**
+	 * Clips this shape to a rectangle with {@link net.paulhertz.geom.RectClipper RectClipper}. Curves are cut exactly where
+	 * they cross the rectangle. Fill and stroke are clipped separately, so that no stroke is drawn along the rectangle:
+	 * <ul>
+	 * <li>the fill becomes a single closed shape without a stroke, whose new edges run along the rectangle;</li>
+	 * <li>the stroke becomes open shapes without a fill, cut wherever the outline leaves the rectangle, 
+	 * with the closing segment included if this shape is closed.</li>
+	 * </ul>
+	 * A shape with neither fill nor stroke is clipped as a closed shape if it is closed, as open shapes if it is not.
+	 * @return   the parts of this shape inside the rectangle: an empty list if this shape lies outside
+	 *           the rectangle, a copy of this shape if it lies inside, otherwise the filled part, if any, 
+	 *           followed by the stroked parts
+	 */
+	public ArrayList<BezShape> clip(float left, float top, float right, float bottom) {
+		return this.clip(RectClipper.makeRectClipper(left, top, right, bottom));
+	}
+	ArrayList<BezShape> clip(RectClipper clipper) {
+		ArrayList<BezShape> result = new ArrayList<BezShape>();
+		float[] box = this.hullBounds();
+		if (!clipper.overlaps(box)) return result;
+		if (RectClipper.INSIDE == clipper.outcode(box)) {
+			result.add(this.clone());
+			return result;
+		}
+		ArrayList<float[]> segments = this.segments();
+		boolean isFilled = this.hasFill() || (!this.hasStroke() && this.isClosed());
+		boolean isStroked = this.hasStroke() || (!this.hasFill() && !this.isClosed());
+		if (isFilled) {
+			ArrayList<float[]> loop = clipper.clipClosedPath(segments);
+			if (!loop.isEmpty()) {
+				BezShape fill = this.styledPath(loop, true);
+				fill.setNoStroke();
+				result.add(fill);
+			}
+		}
+		if (isStroked && !segments.isEmpty()) {
+			if (this.isClosed()) {
+				float[] last = segments.get(segments.size() - 1);
+				int n = last.length;
+				if (last[n - 2] != this.x || last[n - 1] != this.y) {
+					segments.add(new float[] {last[n - 2], last[n - 1], this.x, this.y});
+				}
+			}
+			ArrayList<ArrayList<float[]>> runs = clipper.clipOpenPath(segments);
+			// a closed outline that starts inside the rectangle has its first and last runs meet at the start point
+			if (this.isClosed() && runs.size() > 1 && RectClipper.INSIDE == clipper.outcode(this.x, this.y)) {
+				ArrayList<float[]> last = runs.remove(runs.size() - 1);
+				last.addAll(runs.get(0));
+				runs.set(0, last);
+			}
+			for (ArrayList<float[]> run : runs) {
+				BezShape stroke = this.styledPath(run, false);
+				stroke.setNoFill();
+				result.add(stroke);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return   the segments of this shape, each line as an array of 4 floats, x0, y0, x1, y1, and each curve
+	 *           as an array of 8 floats, x0, y0, cx1, cy1, cx2, cy2, x1, y1
+	 */
+	ArrayList<float[]> segments() {
+		ListIterator<Vertex2DINF> it = curveIterator();
+		ArrayList<float[]> segments = new ArrayList<float[]>(this.curves.size());
+		float currentX = this.x;
+		float currentY = this.y;
+		while (it.hasNext()) {
+			Vertex2DINF vt = it.next();
+			if (CURVE_SEGMENT == vt.segmentType()) {
+				float[] knots = vt.coords();
+				segments.add(new float[] {currentX, currentY, knots[0], knots[1], knots[2], knots[3], knots[4], knots[5]});
+			}
+			else {
+				segments.add(new float[] {currentX, currentY, vt.x(), vt.y()});
+			}
+			currentX = vt.x();
+			currentY = vt.y();
+		}
+		return segments;
+	}
+
+	/**
+	 * @return   a new BezShape built from a list of segments, with the fill, stroke and weight of this shape
+	 */
+	private BezShape styledPath(List<float[]> segments, boolean isClosed) {
+		float[] first = segments.get(0);
+		BezShape shape = new BezShape(this.parent, first[0], first[1], isClosed);
+		shape.setFillColor(this.fillColor());
+		shape.setHasFill(this.hasFill());
+		shape.setStrokeColor(this.strokeColor());
+		shape.setHasStroke(this.hasStroke());
+		shape.setWeight(this.weight());
+		for (float[] seg : segments) {
+			if (8 == seg.length) shape.append(seg[2], seg[3], seg[4], seg[5], seg[6], seg[7]);
+			else shape.append(seg[2], seg[3]);
+		}
+		return shape;
+	}
+
+
 	/**
 	 * Extracts an approximated polygon from path data, returning it as an array of floats.
 	 * Rebuilds the {@code xcoords} and {@code ycoords} arrays. Polygon data is not cached, but the
 	 * {@code xcoords} and {@code ycoords} arrays are. You can use them to construct a polygon once 
 	 * they have been initialized. If, against our good advice, you munge around with
-	 * shape geometry, you can reset {@code xcoords} and {@code ycoords} with a call to 
-	 * this method, which always recalculates {@code xcoords} and {@code ycoords} and {@code boundsRect}
+	 * shape geometry, call {@link #invalidateGeometry()} afterwards: this method recalculates 
+	 * {@code xcoords} and {@code ycoords}, but not the cached bounds of this shape and its parents. 
+	 * Curve segments are divided into {@code steps} lines of equal steps in t, whatever their size, 
+	 * evaluated by forward differencing.
 	 * @param steps    number of straight line segments to divide Bezier curves into
-	 * @param parent   reference to a PApplet needed to build a polygon from a Bezier curve
+	 * @param parent   not used, curves are evaluated without a PApplet
 	 */
 	public float[] asPolygon(PApplet parent, int steps) {
 		ListIterator<Vertex2DINF> it = curveIterator();
@@ -1093,19 +1298,8 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 			int segType = vt.segmentType();
 			if (CURVE_SEGMENT == segType) {
 				float[] knots = vt.coords();
-				float cx1 = knots[0];
-				float cy1 = knots[1];
-				float cx2 = knots[2];
-				float cy2 = knots[3];
-				float ax  = knots[4];
-				float ay  = knots[5];
-				for (int j = 1; j <= steps; j++) {
-					float t = j / (float) steps;
-					float segx = parent.bezierPoint(currentX, cx1, cx2, ax, t);
-					float segy = parent.bezierPoint(currentY, cy1, cy2, ay, t);
-					points[i++] = segx;
-					points[i++] = segy;
-				}
+				i = BezierUtils.forwardDifference(currentX, currentY, knots[0], knots[1], knots[2], knots[3], 
+						knots[4], knots[5], steps, points, i);
 			}
 			else if (LINE_SEGMENT == segType) {
 				points[i++] = vt.x();
@@ -1117,42 +1311,122 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 		// recalculate xcoords and ycoords
 		this.xcoords = GeomUtils.xCoords(points);
 		this.ycoords = GeomUtils.yCoords(points);
-		// force recalculation of boundsRect from xcoords and ycoords next time its method is called
-		this.boundsRect = null;
+		this.locator = null;
 		return points;
 	}
+	
 	/**
-	 * Extracts an approximated polygon from path data. Returns the polygon as an array of floats
-	 * using a default value of 16 steps for curve segments. Call {@link #setPolySteps(int) setPolySteps()} 
-	 * to change the level of approximation of the polygon to the actual paths. 
-	 * @param parent   reference to a PApplet needed to build a polygon from a Bezier curve
+	 * Returns a polygon representation of this shape in which each curve segment is divided into just enough 
+	 * straight lines to stay within {@code tolerance} of the curve, so that large curves get more vertices than
+	 * small ones. Unlike {@link #asPolygon(PApplet, int)}, does not change {@code xcoords} and {@code ycoords}.
+	 * @param tolerance   maximum distance between a curve and its polyline, in the coordinate system of the shape
+	 * @return   an array of alternating x and y coordinates
+	 */
+	public float[] asPolygon(float tolerance) {
+		ListIterator<Vertex2DINF> it = curveIterator();
+		ArrayList<float[]> pieces = new ArrayList<float[]>();
+		// start counting floats at 2, for start point
+		int ct = 2;
+		float currentX = this.x;
+		float currentY = this.y;
+		while (it.hasNext()) {
+			Vertex2DINF vt = it.next();
+			float[] piece;
+			if (CURVE_SEGMENT == vt.segmentType()) {
+				float[] knots = vt.coords();
+				piece = BezierUtils.flattenCubic(currentX, currentY, knots[0], knots[1], knots[2], knots[3], knots[4], knots[5], tolerance);
+			}
+			else {
+				piece = new float[] {vt.x(), vt.y()};
+			}
+			pieces.add(piece);
+			ct += piece.length;
+			currentX = vt.x();
+			currentY = vt.y();
+		}
+		float[] points = new float[ct];
+		points[0] = this.x;
+		points[1] = this.y;
+		int i = 2;
+		for (float[] piece : pieces) {
+			System.arraycopy(piece, 0, points, i, piece.length);
+			i += piece.length;
+		}
+		return points;
+	}
+	
+	/**
+	 * Extracts an approximated polygon from path data and rebuilds the {@code xcoords} and {@code ycoords} arrays. 
+	 * Returns the polygon as an array of floats. By default, curve segments are divided adaptively, so that the 
+	 * polygon stays within a {@link #flatness() flatness} of 0.15 of the curves: small curves get few points 
+	 * and large ones enough to keep their shape. Call {@link #setFlatness(float) setFlatness()} to change the 
+	 * level of approximation, or {@link #setPolySteps(int) setPolySteps()} to divide every curve segment into
+	 * the same number of steps instead. 
+	 * @param parent   not used, curves are evaluated without a PApplet
 	 */
 	public float[] asPolygon(PApplet parent) {
-		return asPolygon(parent, this.polySteps);
+		return asPolygon();
 	}
 	public float[] asPolygon(int steps) {
 		return this.asPolygon(this.parent, steps);
 	}
 	public float[] asPolygon() {
-		return asPolygon(this.parent, this.polySteps);
+		if (this.flatness <= 0) {
+			return asPolygon(this.parent, this.polySteps);
+		}
+		float[] points = this.asPolygon(this.flatness);
+		// recalculate xcoords and ycoords
+		this.xcoords = GeomUtils.xCoords(points);
+		this.ycoords = GeomUtils.yCoords(points);
+		this.locator = null;
+		return points;
 	}
 
 	/**
 	 * Tests if a point is inside this shape by generating a polygon approximation to curved paths and 
 	 * testing that. It is possible to get an erroneous answer. Precision may be increased by calling
-	 * setPolySteps with a value above the default 16 steps. May be slow the first time you call it, 
-	 * but will used cached data after that.
+	 * setFlatness with a value below the default 0.15. May be slow the first time you call it, 
+	 * but will used cached data after that: a table of the polygon's edges sorted into horizontal bands, 
+	 * so that each later test rejects points outside the bounding box at once and only looks at the 
+	 * edges near the point (see {@link net.paulhertz.geom.PolygonLocator PolygonLocator}).
 	 * @param parent   reference to a Processing PApplet, probably the one calling this code
 	 * @param x		   x-coordinate of test point
 	 * @param y        y-coordinate of test point
 	 * @return         true if point is inside the polygon approximation of this shape
 	 */
 	public boolean containsPoint(PApplet parent, float x, float y) {
-		return GeomUtils.pointInPoly(this.polySize(parent), this.xcoords(parent), this.ycoords(parent), x, y);
+		return this.locator(parent).contains(x, y);
 	}
 	public boolean containsPoint(float x, float y) {
 		return this.containsPoint(this.parent, x, y);
 	}
+	
+	/**
+	 * Tests many points at once against the polygon approximation of this shape. Much faster than calling 
+	 * {@link #containsPoint(float, float) containsPoint} for each point, especially for points on a grid or 
+	 * along scanlines: the points are sorted by y and tested in one sweep down the polygon.
+	 * @param points       array of alternating x and y coordinates of test points
+	 * @param isParallel   true to split large batches of points across threads
+	 * @return   a BitSet in which bit k is set if point k, at {@code points[2k], points[2k + 1]}, is inside this shape
+	 */
+	public BitSet containsPoints(float[] points, boolean isParallel) {
+		return this.locator(this.parent).contains(points, isParallel);
+	}
+	public BitSet containsPoints(float[] points) {
+		return this.containsPoints(points, false);
+	}
+	
+	/**
+	 * @return   the point locator for the polygon approximation of this shape, built if necessary
+	 */
+	private PolygonLocator locator(PApplet parent) {
+		PolygonLocator loc = this.locator;
+		if (null == loc) {
+			loc = PolygonLocator.makePolygonLocator(this.xcoords(parent), this.ycoords(parent), this.polySize(parent));
+			this.locator = loc;
+		}
+		return loc;
+	}
 
 	/**
 	 * Returns x-coordinates of the geometry of this shape. The shape is first rendered as 
@@ -1187,14 +1461,30 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	}
 	
 	/**
-	 * Sets {@code boundsRect}, {@code xcoords} and {@code ycoords} to null. Called internally after transforms.
-	 * If you munge around with the geometry, you can reset {@code xcoords} and {@code ycoords} with a call to 
-	 * {@link #asPolygon() asPolygon}, which always recalculates {@code xcoords} and {@code ycoords}.
+	 * Drops everything cached from the geometry of this shape: bounds, polygon coordinates, arc lengths 
+	 * and the like, and tells parent components and any spatial index that the geometry has changed. 
+	 * Transforms and the methods that edit vertices do this for you. Call it if you change the geometry 
+	 * in place, for example through the vertices returned by {@link #curves()}.
+	 */
+	public void invalidateGeometry() {
+		this.nullCoords();
+	}
+	
+	/**
+	 * Sets {@code boundsRect}, {@code xcoords} and {@code ycoords} and other cached geometry to null and flags 
+	 * the cached bounds of parent components for recalculation. Called internally after transforms.
+	 * If you munge around with the geometry, call {@link #invalidateGeometry()}.
 	 */
 	private void nullCoords() {
 		this.xcoords = null;
 		this.ycoords = null;
-		this.boundsRect = null;
+		this.locator = null;
+		this.arcLengths = null;
+		this.lodPolygon = null;
+		this.invalidateBounds();
+		if (null != this.parentComponent) {
+			this.parentComponent.geometryChanged(this);
+		}
 	}
 
 	/** 
@@ -1216,10 +1506,223 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 		return polySteps;
 	}
 	/** 
+	 * Divides curve segments into the same number of steps in the default polygon, in place of adaptive 
+	 * division by {@link #flatness() flatness}.
 	 * @param newPolySteps   default number of steps in polyline representation of a curve segment 
 	 */
 	public void setPolySteps(int newPolySteps) {
 		this.polySteps = newPolySteps;
+		this.flatness = 0;
+		this.nullCoords();
+	}
+	
+	/** 
+	 * @return   maximum distance between a curve segment and its polyline in the default polygon, 
+	 *           or 0 if curves are divided into {@link #polySteps() polySteps} steps
+	 */
+	public float flatness() {
+		return flatness;
+	}
+	/** 
+	 * Sets the maximum distance between a curve segment and its polyline in the default polygon, used 
+	 * by {@code containsPoint}, {@code bounds} and other methods that work with {@code xcoords} and {@code ycoords}. 
+	 * Curve segments are divided adaptively, into just enough lines to stay within this distance.
+	 * @param newFlatness   maximum distance, in the coordinate system of the shape, default 0.15; 
+	 *                      pass 0 to divide every curve segment into {@link #polySteps() polySteps} steps
+	 */
+	public void setFlatness(float newFlatness) {
+		this.flatness = Math.max(0, newFlatness);
+		this.nullCoords();
+	}
+	
+	
+	/**
+	 * Thins out the points of the straight line parts of this shape, such as turtle trails and multilines, 
+	 * that add little to its appearance. Curve segments are kept as they are, and so are the points where 
+	 * lines meet curves and the start and end points of the shape.
+	 * @param method      point-thinning method, see {@link net.paulhertz.geom.PathSimplifier PathSimplifier}
+	 * @param tolerance   distance below which points are dropped, in the coordinate system of the shape
+	 * @return   number of points removed
+	 */
+	public int simplify(PathSimplifier.Method method, float tolerance) {
+		ArrayList<Vertex2DINF> simplified = this.simplifiedCurves(method, tolerance);
+		if (null == simplified) return 0;
+		int removed = this.curves.size() - simplified.size();
+		this.setCurves(simplified);
+		return removed;
+	}
+	
+	/**
+	 * Returns simplified vertices for this shape without changing it, so that it may be called from 
+	 * several threads at once, as long as no pending transform is waiting to be applied.
+	 * @return   a new list of vertices, or null if no point would be removed
+	 */
+	ArrayList<Vertex2DINF> simplifiedCurves(PathSimplifier.Method method, float tolerance) {
+		return this.replaceLineRuns(run -> {
+			float[] kept = PathSimplifier.simplify(run, method, tolerance);
+			if (kept == run) return null;
+			ArrayList<Vertex2DINF> lines = new ArrayList<Vertex2DINF>(kept.length / 2);
+			for (int i = 2; i < kept.length; i += 2) {
+				lines.add(new LineVertex(kept[i], kept[i + 1]));
+			}
+			return lines;
+		});
+	}
+	
+	/**
+	 * Replaces runs of straight lines in this shape with fewer Bezier curves that pass within {@code tolerance} 
+	 * of their points, with least-squares curve fitting (see {@link net.paulhertz.geom.CurveFitter CurveFitter}).
+	 * Where a run turns more sharply than {@link net.paulhertz.geom.CurveFitter#DEFAULT_CORNER_ANGLE 60 degrees},
+	 * curves meet at a corner. Runs are left alone if fitting would not reduce their number of vertices. 
+	 * Dense turtle trails and hand-drawn lines typically shrink by an order of magnitude.
+	 * @param tolerance   maximum distance between a point of a line and the curves, in the coordinate system of the shape
+	 * @return   number of vertices removed
+	 */
+	public int fitCurves(float tolerance) {
+		return this.fitCurves(tolerance, CurveFitter.DEFAULT_CORNER_ANGLE);
+	}
+	/**
+	 * Replaces runs of straight lines in this shape with fewer Bezier curves that pass within {@code tolerance} 
+	 * of their points. 
+	 * @param tolerance     maximum distance between a point of a line and the curves, in the coordinate system of the shape
+	 * @param cornerAngle   change of direction, in radians, above which curves meet at a corner
+	 * @return   number of vertices removed
+	 */
+	public int fitCurves(float tolerance, float cornerAngle) {
+		ArrayList<Vertex2DINF> fitted = this.replaceLineRuns(run -> {
+			// runs of one or two lines can't get any shorter, and runs that stay on one point have no curve to fit
+			if (run.length < 8 || !hasDistinctPoints(run)) return null;
+			float[] segs = CurveFitter.fitCurves(run, tolerance, cornerAngle);
+			if (segs.length / 6 >= run.length / 2 - 1) return null;
+			ArrayList<Vertex2DINF> bezCurves = new ArrayList<Vertex2DINF>(segs.length / 6);
+			for (int i = 0; i < segs.length; i += 6) {
+				bezCurves.add(new BezVertex(segs[i], segs[i + 1], segs[i + 2], segs[i + 3], segs[i + 4], segs[i + 5]));
+			}
+			return bezCurves;
+		});
+		if (null == fitted) return 0;
+		int removed = this.curves.size() - fitted.size();
+		this.setCurves(fitted);
+		return removed;
+	}
+	
+	/**
+	 * @return   true if a run of points, alternating x and y coordinates, has at least two different points
+	 */
+	private static boolean hasDistinctPoints(float[] run) {
+		for (int i = 2; i < run.length; i += 2) {
+			if (run[i] != run[0] || run[i + 1] != run[1]) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Builds a new list of vertices for this shape in which each run of straight lines may be replaced. 
+	 * Curve segments are copied. Does not change this shape.
+	 * @param replacer   given the coordinates of a run of lines, starting with the point before its first line, 
+	 *                   returns vertices to replace all but that first point, or null to keep the run as it is
+	 * @return   a new list of vertices, or null if no run was replaced
+	 */
+	private ArrayList<Vertex2DINF> replaceLineRuns(java.util.function.Function<float[], List<Vertex2DINF>> replacer) {
+		ListIterator<Vertex2DINF> it = curveIterator();
+		ArrayList<Vertex2DINF> result = new ArrayList<Vertex2DINF>(this.curves.size());
+		// coordinates of the current run of lines, starting with the point before its first line
+		float[] run = new float[64];
+		int runCount = 2;
+		run[0] = this.x;
+		run[1] = this.y;
+		boolean isChanged = false;
+		int runStart = 0;
+		while (true) {
+			Vertex2DINF vt = it.hasNext() ? it.next() : null;
+			if (null != vt && LINE_SEGMENT == vt.segmentType()) {
+				if (runCount + 2 > run.length) run = Arrays.copyOf(run, run.length * 2);
+				run[runCount++] = vt.x();
+				run[runCount++] = vt.y();
+				result.add(vt.clone());
+				continue;
+			}
+			// end of a run: swap in its replacement
+			if (runCount > 2) {
+				List<Vertex2DINF> replacement = replacer.apply(Arrays.copyOf(run, runCount));
+				if (null != replacement) {
+					isChanged = true;
+					result.subList(runStart, result.size()).clear();
+					result.addAll(replacement);
+				}
+			}
+			if (null == vt) break;
+			result.add(vt.clone());
+			runStart = result.size();
+			run[0] = vt.x();
+			run[1] = vt.y();
+			runCount = 2;
+		}
+		return isChanged ? result : null;
+	}
+	
+	
+	/*-------------------------------------------------------------------------------------------*/
+	/*                                                                                           */
+	/* METHODS FOR DISTANCE ALONG THE PATH                                                       */ 
+	/*                                                                                           */
+	/*-------------------------------------------------------------------------------------------*/
+
+	
+	/**
+	 * Returns the table of cumulative lengths along this shape, building it the first time it is needed
+	 * from a polygon that stays within a quarter of the {@link #flatness() flatness} of the curves. 
+	 * Transforms and other changes to the geometry discard the table.
+	 * @return   an ArcLengthTable for this shape
+	 */
+	public ArcLengthTable arcLengthTable() {
+		ArcLengthTable table = this.arcLengths;
+		if (null == table) {
+			float tolerance = (this.flatness > 0) ? this.flatness / 4 : 0.0125f;
+			table = ArcLengthTable.makeArcLengthTable(this.asPolygon(tolerance), this.isClosed());
+			this.arcLengths = table;
+		}
+		return table;
+	}
+	
+	/**
+	 * @return   the length of the path of this shape, including the closing segment if the shape is closed
+	 */
+	public float length() {
+		return this.arcLengthTable().length();
+	}
+	
+	/**
+	 * Returns the point at a given distance along the path of this shape, from its initial vertex. 
+	 * Distances wrap around a closed shape and are clamped to the ends of an open one.
+	 * @param distance   distance along the path
+	 * @return   a PVector with the coordinates of the point
+	 */
+	public PVector pointAt(float distance) {
+		float[] pt = this.arcLengthTable().pointAt(distance);
+		return new PVector(pt[0], pt[1]);
+	}
+	
+	/**
+	 * Returns the direction of the path of this shape at a given distance from its initial vertex. 
+	 * Use {@code heading()} on the result for the angle of the path.
+	 * @param distance   distance along the path
+	 * @return   a PVector of unit length in the direction of the path
+	 */
+	public PVector tangentAt(float distance) {
+		float[] dir = this.arcLengthTable().tangentAt(distance);
+		return new PVector(dir[0], dir[1]);
+	}
+	
+	/**
+	 * Returns points spaced evenly by distance along the path of this shape. For an open shape, the first and 
+	 * last points are the ends of the path; for a closed shape, the points go all the way round, starting at the initial 
+	 * vertex, without repeating it.
+	 * @param n   number of points
+	 * @return   array of alternating x and y coordinates of the points
+	 */
+	public float[] sampleEvenly(int n) {
+		return this.arcLengthTable().sampleEvenly(n);
 	}
 	
 	
@@ -1231,26 +1734,37 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 
 	
 	/** 
-	 * returns array of floats with top, left, bottom, right coordinates of bounding box
-	 * These are an approximation based on the derived polygon, accuracy can be improved by first 
-	 * calling asPolygon with an argument greater than the default of 16 segments per curve.
-	 * @param parent   reference to a PApplet needed to build a polygon from a Bezier curve
+	 * Returns the exact bounding box of this shape as an array of floats with left, top, right, bottom coordinates.
+	 * Curve segments contribute their end points and the points where they turn in x or y, found from the roots
+	 * of their derivatives, so no polygon is built. 
+	 * For speed, it is better to call the {@code boundsRect()} method, which returns cached data.
+	 * @param parent   not used, bounds are calculated without a PApplet
 	 * @return   array of float: left, top, right, bottom coordinates
 	 */
 	public float[] bounds(PApplet parent) {
-		float[] xc = this.xcoords(parent);
-		float[] yc = this.ycoords(parent);
-		float xMin = xc[0];
-		float yMin = yc[0];
+		ListIterator<Vertex2DINF> it = curveIterator();
+		float xMin = this.x;
+		float yMin = this.y;
 		float xMax = xMin;
 		float yMax = yMin;
-		for(int i = 1; i < xcoords.length; i++) {
-			float x = xc[i];
-			float y = yc[i];
-			if (x < xMin) xMin = x;
-			if (y < yMin) yMin = y;
-			if (x > xMax) xMax = x;
-			if (y > yMax) yMax = y;
+		float currentX = this.x;
+		float currentY = this.y;
+		while (it.hasNext()) {
+			Vertex2DINF vt = it.next();
+			if (CURVE_SEGMENT == vt.segmentType()) {
+				float[] knots = vt.coords();
+				float[] b = BezierUtils.cubicBounds(currentX, currentY, knots[0], knots[1], knots[2], knots[3], knots[4], knots[5]);
+				if (b[0] < xMin) xMin = b[0];
+				if (b[1] < yMin) yMin = b[1];
+				if (b[2] > xMax) xMax = b[2];
+				if (b[3] > yMax) yMax = b[3];
+			}
+			currentX = vt.x();
+			currentY = vt.y();
+			if (currentX < xMin) xMin = currentX;
+			if (currentY < yMin) yMin = currentY;
+			if (currentX > xMax) xMax = currentX;
+			if (currentY > yMax) yMax = currentY;
 		}
 		float[] result = new float[4];
 		result[0] = xMin;
@@ -1260,9 +1774,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 		return result;
 	}
 	/** 
-	 * returns array of floats with top, left, bottom, right coordinates of bounding box
-	 * These are an approximation based on the derived polygon, accuracy can be improved by first 
-	 * calling asPolygon with an argument greater than the default of 16 segments per curve.
+	 * Returns the exact bounding box of this shape as an array of floats with left, top, right, bottom coordinates.
 	 * For speed, it is better to call the {@code boundsRect()} method, which returns cached data.
 	 * @return   array of float: left, top, right, bottom coordinates
 	 */
@@ -1270,9 +1782,34 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 		return this.bounds(this.parent);
 	}
 	
+	/** 
+	 * Returns the bounding box of all the points of this shape, control points included, as an array of floats with 
+	 * left, top, right, bottom coordinates. Since a curve lies inside the hull of its control points, the box always 
+	 * contains the shape, but may be larger than its exact {@link #bounds() bounds}. Cheaper than exact bounds, 
+	 * useful for quick rejection tests.
+	 * @return   array of float: left, top, right, bottom coordinates
+	 */
+	public float[] hullBounds() {
+		ListIterator<Vertex2DINF> it = curveIterator();
+		float xMin = this.x;
+		float yMin = this.y;
+		float xMax = xMin;
+		float yMax = yMin;
+		while (it.hasNext()) {
+			float[] knots = it.next().coords();
+			for (int i = 0; i < knots.length; i += 2) {
+				if (knots[i] < xMin) xMin = knots[i];
+				if (knots[i + 1] < yMin) yMin = knots[i + 1];
+				if (knots[i] > xMax) xMax = knots[i];
+				if (knots[i + 1] > yMax) yMax = knots[i + 1];
+			}
+		}
+		return new float[] {xMin, yMin, xMax, yMax};
+	}
+	
 	/**
 	 * Returns the bounding rectangle of this shape. If it has not yet been calculated,
-	 * creates it from the calculated xcoords and ycoords arrays. The {@code boundsRect} is
+	 * creates it from the exact {@link #bounds() bounds} of the geometry. The {@code boundsRect} is
 	 * aligned to the x- and y-axes. It is cached in between calls, and set to null after a transform. 
 	 *
 	 * @return   the bounding rectangle of this shape
@@ -1284,6 +1821,19 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 		}		
 		return boundsRect;
 	}
+	
+	/**
+	 * Sets the cached bounding rectangle of this shape to null and flags the cached bounds of the components
+	 * up tree from it for recalculation. Unlike {@link #invalidateGeometry()}, leaves the cached polygon alone.
+	 * @see net.paulhertz.aifile.DisplayComponent#invalidateBounds()
+	 */
+	@Override
+	public void invalidateBounds() {
+		this.boundsRect = null;
+		if (null != this.parentComponent) {
+			this.parentComponent.invalidateBounds();
+		}
+	}
 
 
 	/*-------------------------------------------------------------------------------------------------------*/
@@ -1303,6 +1853,13 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 */
 	public void translateShape(float xTrans, float yTrans) {
 		this.setCenter(this.xctr + xTrans, this.yctr + yTrans);
+		if (this.isDeferringTransforms) {
+			Matrix3 matx = new Matrix3();
+			matx.translateCTM(xTrans, yTrans);
+			this.deferTransform(matx);
+			this.nullCoords();
+			return;
+		}
 		this.setStartPoint(this.x + xTrans, this.y + yTrans);
 		ListIterator<Vertex2DINF> it = this.curveIterator();
 		while (it.hasNext()) {
@@ -1386,10 +1943,19 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @param yScale   scaling on y-axis
 	 */
 	public void scaleShape(float xScale, float yScale, float x0, float y0) {
-		this.x = (x0 + (this.x - x0) * xScale);
-		this.y = (y0 + (this.y - y0) * yScale);
 		this.xctr = (x0 + (this.xctr - x0) * xScale);
 		this.yctr = (y0 + (this.yctr - y0) * yScale);
+		if (this.isDeferringTransforms) {
+			Matrix3 matx = new Matrix3();
+			matx.translateCTM(-x0, -y0);
+			matx.scaleCTM(xScale, yScale);
+			matx.translateCTM(x0, y0);
+			this.deferTransform(matx);
+			this.nullCoords();
+			return;
+		}
+		this.x = (x0 + (this.x - x0) * xScale);
+		this.y = (y0 + (this.y - y0) * yScale);
 		ListIterator<Vertex2DINF> it = this.curveIterator();
 		while (it.hasNext()) {
 			Vertex2DINF vt = it.next();
@@ -1458,6 +2024,10 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	public void rotateShape(float theta) {
 		float x = this.xctr();
 		float y = this.yctr();
+		if (this.isDeferringTransforms) {
+			this.deferRotation(x, y, theta);
+			return;
+		}
 		Point2D.Float pt = GeomUtils.rotateCoorAroundPoint(this.x(), this.y(), x, y, theta);
 		this.setX(pt.x);
 		this.setY(pt.y);
@@ -1495,6 +2065,10 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * TODO for theta very near PI, 0, or TWO_PI, insure correct rotation.  
 	 */
 	public void rotateShape(float xctr, float yctr, float theta) {
+		if (this.isDeferringTransforms) {
+			this.deferRotation(xctr, yctr, theta);
+			return;
+		}
 		Point2D.Float pt = GeomUtils.rotateCoorAroundPoint(this.x(), this.y(), xctr, yctr, theta);
 		this.setX(pt.x);
 		this.setY(pt.y);
@@ -1525,6 +2099,21 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 		this.nullCoords();
 	}
 
+
+	/**
+	 * Composes a rotation around a supplied point with the pending transform, when transforms are deferred. 
+	 * @param xctr    x-coordinate of center of rotation
+	 * @param yctr    y-coordinate of center of rotation
+	 * @param theta   degrees to rotate (in radians)
+	 */
+	private void deferRotation(float xctr, float yctr, float theta) {
+		Matrix3 matx = new Matrix3();
+		matx.translateCTM(-xctr, -yctr);
+		matx.rotateCTM(theta);
+		matx.translateCTM(xctr, yctr);
+		this.deferTransform(matx);
+		this.nullCoords();
+	}
 	
 	
 	/**
@@ -1589,16 +2178,72 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * Performs an affine geometric transformation on this shape using 3x3 matrix multiplication.
 	 * Sets xcoords and ycoords arrays to null: they will have to be recalculated after a transform,
 	 * which will be done through lazy initialization when {@code xcoords()} or {@code ycoords()} are called.
+	 * If transforms are deferred (see {@link #setDeferTransforms(boolean) setDeferTransforms}), only the 
+	 * center point is transformed right away, vertices are transformed when they are next needed. 
 	 * @param matx   a 3x3 matrix see Matrix3 class for methods of loading transforms
 	 */
 	public void transform(Matrix3 matx) {
+		if (this.isDeferringTransforms) {
+			this.transformDeferred(matx);
+			return;
+		}
+		this.transformCenter(matx);
+		this.transformVertices(matx);
+		this.nullCoords();
+	}
+	
+	/**
+	 * Transforms the center point of this shape right away and composes the supplied matrix with the 
+	 * pending transform, whether or not this shape is deferring transforms. Called by {@code transform()} 
+	 * when transforms are deferred and by composite components that pass a deferred transform down to their children. 
+	 * @see net.paulhertz.aifile.DisplayComponent#transformDeferred(net.paulhertz.geom.Matrix3)
+	 */
+	@Override
+	protected void transformDeferred(Matrix3 matx) {
+		this.transformCenter(matx);
+		this.deferTransform(matx);
+		this.nullCoords();
+	}
+	
+	/**
+	 * Transforms the center point of this shape and stores the matrix as its current transform. 
+	 * @param matx   a 3x3 matrix see Matrix3 class for methods of loading transforms
+	 */
+	private void transformCenter(Matrix3 matx) {
 		this.ctm = new Matrix3(matx);
 		Point2D.Double pt = new Point2D.Double();
-		ListIterator<Vertex2DINF> it = this.curveIterator();
 		if (Matrix3.isNormalMatrix3(matx)) {
 			pt = matx.multiplyPointByNormalCTM(this.xctr(), this.yctr(), pt);
-			this.setCenter(pt);
-			pt = matx.multiplyPointByNormalCTM(this.x(), this.y(), pt);
+		}
+		else {
+			pt = matx.multiplyPointByProjCTM(this.xctr(), this.yctr(), pt);
+		}
+		this.setCenter(pt);
+	}
+	
+	/**
+	 * Applies the pending transform accumulated while transforms were deferred to the vertices of this shape. 
+	 * Called for you when geometry is read, drawn or written. 
+	 * @see net.paulhertz.aifile.DisplayComponent#applyPendingTransform()
+	 */
+	@Override
+	public void applyPendingTransform() {
+		if (null == this.pendingTransform) return;
+		Matrix3 matx = this.pendingTransform;
+		this.pendingTransform = null;
+		this.transformVertices(matx);
+		this.nullCoords();
+	}
+	
+	/**
+	 * Transforms the start point and all vertices of this shape, but not its center point. 
+	 * @param matx   a 3x3 matrix see Matrix3 class for methods of loading transforms
+	 */
+	private void transformVertices(Matrix3 matx) {
+		Point2D.Double pt = new Point2D.Double();
+		ListIterator<Vertex2DINF> it = this.curveIterator();
+		if (Matrix3.isNormalMatrix3(matx)) {
+			pt = matx.multiplyPointByNormalCTM(this.x, this.y, pt);
 			this.setStartPoint(pt);
 			while (it.hasNext()) {
 				Vertex2DINF vt = it.next();
@@ -1625,9 +2270,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 			}
 		}
 		else {
-			pt = matx.multiplyPointByProjCTM(this.xctr(), this.yctr(), pt);
-			this.setCenter(pt);
-			pt = matx.multiplyPointByProjCTM(this.x(), this.y(), pt);
+			pt = matx.multiplyPointByProjCTM(this.x, this.y, pt);
 			this.setStartPoint(pt);
 			while (it.hasNext()) {
 				Vertex2DINF vt = it.next();
@@ -1654,7 +2297,6 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 			}
 			
 		}
-		this.nullCoords();
 	}
 	/**
 	 * Calls transform with this shape's ctm, current transformation matrix.
@@ -1676,6 +2318,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 */
 	public void draw() {
 		if (!this.isVisible) return;
+		this.applyPendingTransform();
 		parent.beginShape();
 		if (hasFill()) {
 			parent.fill(fillColor);
@@ -1741,6 +2384,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 */
 	public void draw(PGraphics pg) {
 		if (!this.isVisible) return;
+		this.applyPendingTransform();
 		pg.beginShape();
 		if (hasFill()) {
 			pg.fill(fillColor);
@@ -1798,12 +2442,190 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 		}
 	}
 
+	/**
+	 * Draws this shape as part of a batch, sending only the style changes that {@code state} reports. 
+	 * Marked shapes are drawn normally and reset the tracked state.
+	 * @param pg      a PGraphics instance
+	 * @param state   style state of the renderer, updated by this call
+	 */
+	void drawBatched(PGraphics pg, StyleState state) {
+		if (!this.isVisible) return;
+		if (this.isMarked) {
+			this.draw(pg);
+			state.reset();
+			return;
+		}
+		this.applyPendingTransform();
+		state.apply(pg, this);
+		pg.beginShape();
+		pg.vertex(this.x, this.y);
+		ListIterator<Vertex2DINF> it = curveIterator();
+		while (it.hasNext()) {
+			it.next().draw(pg);
+		}
+		if (isClosed()) {
+			pg.endShape(PApplet.CLOSE);
+		}
+		else {
+			pg.endShape();
+		}
+	}
+
+	/**
+	 * Builds a retained PShape with the geometry, fill, stroke and weight of this shape, for fast redrawing 
+	 * with {@code pg.shape()}. The PShape does not change when this shape changes. With the P2D and P3D
+	 * renderers the PShape keeps its geometry in GPU buffers. Marks are not included. 
+	 * @param pg   the PGraphics that will draw the PShape
+	 * @return   a new PShape
+	 */
+	public PShape toPShape(PGraphics pg) {
+		this.applyPendingTransform();
+		PShape shp = pg.createShape();
+		shp.beginShape();
+		if (hasFill()) {
+			shp.fill(fillColor);
+		}
+		else {
+			shp.noFill();
+		}
+		if (hasStroke()) {
+			shp.stroke(strokeColor);
+		}
+		else {
+			shp.noStroke();
+		}
+		shp.strokeWeight(weight);
+		shp.vertex(this.x, this.y);
+		ListIterator<Vertex2DINF> it = curveIterator();
+		while (it.hasNext()) {
+			Vertex2DINF vt = it.next();
+			if (CURVE_SEGMENT == vt.segmentType()) {
+				float[] knots = vt.coords();
+				shp.bezierVertex(knots[0], knots[1], knots[2], knots[3], knots[4], knots[5]);
+			}
+			else {
+				shp.vertex(vt.x(), vt.y());
+			}
+		}
+		if (isClosed()) {
+			shp.endShape(PApplet.CLOSE);
+		}
+		else {
+			shp.endShape();
+		}
+		return shp;
+	}
+
+	
+	/**
+	 * Culling draw, called by the {@code draw} methods that take a viewport. Skips this shape if its
+	 * bounds miss the viewport. If {@code pixelSize} is greater than 0, a shape smaller than a pixel is drawn 
+	 * as a single point in its fill color (or its stroke color, if it has no fill). If {@code lod} is not null,
+	 * a shape smaller than {@link LevelOfDetail#rectSize()} pixels is drawn as a rectangle, and larger shapes 
+	 * as polylines that stay within {@link LevelOfDetail#tolerance()} pixels of their curves. 
+	 * Level of detail is not used for marked shapes.
+	 * @param pg          a PGraphics instance, or null to draw to the Processing window
+	 * @param viewport    visible region
+	 * @param pixelSize   size of one pixel, or 0
+	 * @param lod         level of detail settings, or null
+	 */
+	@Override
+	protected void drawCulled(PGraphics pg, BezRectangle viewport, float pixelSize, LevelOfDetail lod) {
+		if (!this.isVisible) return;
+		BezRectangle r = this.boundsRect();
+		if (!viewport.overlaps(r)) return;
+		PGraphics g = (null == pg) ? parent.g : pg;
+		float size = Math.max(r.getWidth(), r.getHeight());
+		// marked shapes show their vertices, so they are not simplified
+		if (this.isMarked || pixelSize <= 0) lod = null;
+		if (size < pixelSize) {
+			if (!hasFill() && !hasStroke()) return;
+			g.stroke(hasFill() ? fillColor : strokeColor);
+			g.strokeWeight(pixelSize);
+			g.point(r.getLeft() + r.getWidth() / 2, r.getTop() + r.getHeight() / 2);
+		}
+		else if (null != lod && size < lod.rectSize() * pixelSize) {
+			if (!hasFill() && !hasStroke()) return;
+			g.noStroke();
+			g.fill(hasFill() ? fillColor : strokeColor);
+			g.rect(r.getLeft(), r.getTop(), r.getWidth(), r.getHeight());
+		}
+		else if (null != lod && lod.tolerance() > 0) {
+			this.drawPolygon(g, this.lodPolygon(lod.tolerance() * pixelSize));
+		}
+		else {
+			if (null == pg) this.draw(); 
+			else this.draw(pg);
+		}
+	}
+	
+	/**
+	 * Returns the polyline used for level of detail drawing, reusing the last one if it was built with the same 
+	 * tolerance, as it is when a view is redrawn without zooming or when tiles at one scale are drawn.
+	 * The cache is dropped when the geometry changes. 
+	 * @param tolerance   maximum distance between a curve and its polyline, in the coordinate system of the shape
+	 * @return   an array of alternating x and y coordinates
+	 */
+	private float[] lodPolygon(float tolerance) {
+		LodPolygon cached = this.lodPolygon;
+		if (null != cached && cached.tolerance == tolerance) return cached.points;
+		float[] points = this.asPolygon(tolerance);
+		// replaced in one write, so threads drawing this shape at the same time see one polyline or the other
+		this.lodPolygon = new LodPolygon(tolerance, points);
+		return points;
+	}
+
+	/**
+	 * A polyline built for level of detail drawing and the tolerance it was built with.
+	 */
+	private static final class LodPolygon {
+		final float tolerance;
+		final float[] points;
+
+		LodPolygon(float tolerance, float[] points) {
+			this.tolerance = tolerance;
+			this.points = points;
+		}
+	}
+	
+	/**
+	 * Draws a polyline representation of this shape with the style of this shape.
+	 * @param g        a PGraphics instance
+	 * @param points   array of alternating x and y coordinates
+	 */
+	private void drawPolygon(PGraphics g, float[] points) {
+		if (hasFill()) {
+			g.fill(fillColor);
+		}
+		else {
+			g.noFill();
+		}
+		if (hasStroke()) {
+			g.stroke(strokeColor);
+		}
+		else {
+			g.noStroke();
+		}
+		g.strokeWeight(weight);
+		g.beginShape();
+		for (int i = 0; i < points.length; i += 2) {
+			g.vertex(points[i], points[i + 1]);
+		}
+		if (isClosed()) {
+			g.endShape(PApplet.CLOSE);
+		}
+		else {
+			g.endShape();
+		}
+	}
+
 
 	/** 
 	 * Draws this shape to the display. Calls beginShape and endShape on its own.
 	 * Uses current fill, stroke and weight from Processing environment. Doesn't mark vertices.
 	 */
 	public void drawQuick() {
+		this.applyPendingTransform();
 		parent.beginShape();
 		// equivalent to startPoint.draw(this.parent);
 		parent.vertex(this.x, this.y);
@@ -1836,8 +2658,22 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * <code>true</code> before calling <code>write()</code>. Because Illustrator does not support separate transparency
 	 * for fill and stroke, assigning a transparent color to either on will make the the entire object transparent. 
 	 * If stroke and fill transparency have different values, stroke transparency will be assigned to the object.
+	 * If a clipping rectangle is set in {@link AIFileWriter#setClipRect(float, float, float, float) AIFileWriter}, 
+	 * only the parts of this shape inside it are written, see {@link #clip(float, float, float, float) clip}.
 	 */
 	public void write(PrintWriter pw) {
+		this.applyPendingTransform();
+		// clip as we go, so that nothing outside the clipping rectangle is written
+		ArrayList<BezShape> pieces = null;
+		RectClipper clipper = AIFileWriter.clipRect();
+		if (null != clipper) {
+			float[] box = this.hullBounds();
+			if (!clipper.overlaps(box)) return;
+			if (RectClipper.INSIDE != clipper.outcode(box)) {
+				pieces = this.clip(clipper);
+				if (pieces.isEmpty()) return;
+			}
+		}
 		boolean bracketVisible = false;
 		boolean bracketLocked = false;
 		if (!this.isVisible) {
@@ -1871,6 +2707,27 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 			pathOp += AIFileWriter.STROKE;
 			AIFileWriter.setWeight(weight(), pw);
 		}
+		if (null == pieces) {
+			this.writePath(pathOp, pw);
+		}
+		else {
+			// fill and stroke were clipped separately: each piece paints only its own
+			for (BezShape piece : pieces) {
+				int pieceOp = (piece.hasFill() ? AIFileWriter.FILL : 0) + (piece.hasStroke() ? AIFileWriter.STROKE : 0);
+				piece.writePath(pieceOp, pw);
+			}
+		}
+		if (AIFileWriter.useTransparency && transparencySet) {
+			AIFileWriter.noTransparency(pw);
+		}
+		if (bracketVisible) AIFileWriter.setVisible(true, pw);
+		if (bracketLocked) AIFileWriter.setLocked(false, pw);
+	}
+
+	/**
+	 * Writes the geometry of this shape, closing it if it is closed, and paints it with pathOp.
+	 */
+	private void writePath(int pathOp, PrintWriter pw) {
 		// the startPoint differently, without calling its write() method. 
 		AIFileWriter.psMoveTo(x, y, pw);
 		ListIterator<Vertex2DINF> it = curveIterator();
@@ -1882,11 +2739,6 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 			pathOp += AIFileWriter.CLOSE;
 		}
 		AIFileWriter.paintPath(pathOp, pw);
-		if (AIFileWriter.useTransparency && transparencySet) {
-			AIFileWriter.noTransparency(pw);
-		}
-		if (bracketVisible) AIFileWriter.setVisible(true, pw);
-		if (bracketLocked) AIFileWriter.setLocked(false, pw);
 	}
 
 	/** 
@@ -1902,6 +2754,7 @@ public class BezShape extends DisplayComponent implements ColorableINF {
 	 * @param output   a PrintWriter that writes vector graphics in the Adobe Illustrator 7.0 file format
 	 */
 	public void write(int pathOp, PrintWriter output) {
+		this.applyPendingTransform();
 		AIFileWriter.psMoveTo(x, y, output);
 		ListIterator<Vertex2DINF> it = curveIterator();
 		while (it.hasNext()) {
@@ -44,7 +44,17 @@ public class BoundsCalculationVisitor extends ComponentVisitor {
 	}
 	
 	
+	/**
+	 * Returns the bounds of a component, using the cached bounds maintained by the component tree 
+	 * when they are available and visiting the component's geometry otherwise. 
+	 * @param comp   a DisplayComponent
+	 * @return   a new BezRectangle with the bounds of all geometry in comp
+	 */
 	public static BezRectangle componentBounds(DisplayComponent comp) {
+		BezRectangle r = comp.boundsRect();
+		if (null != r) {
+			return BezRectangle.makeLeftTopRightBottom(r.parent, r.getLeft(), r.getTop(), r.getRight(), r.getBottom());
+		}
 		BoundsCalculationVisitor visitor = BoundsCalculationVisitor.makeBoundsCalculationVisitor();
 		comp.accept(visitor);
 		return visitor.bounds();
@@ -112,6 +122,31 @@ public class BoundsCalculationVisitor extends ComponentVisitor {
 		return index;
 	}
 
+	/**
+	 * Merges the bounds calculated by another visitor into this one. Used as the combiner 
+	 * when visiting in parallel with {@link ParallelTraversal}.
+	 * @param other   another BoundsCalculationVisitor
+	 * @return   this visitor, now covering the shapes visited by both visitors
+	 */
+	public BoundsCalculationVisitor combine(BoundsCalculationVisitor other) {
+		if (null == other.parent) return this;
+		if (null == this.parent) {
+			this.parent = other.parent;
+			this.xMax = other.xMax;
+			this.xMin = other.xMin;
+			this.yMax = other.yMax;
+			this.yMin = other.yMin;
+		}
+		else {
+			if (this.xMax < other.xMax) this.xMax = other.xMax;
+			if (this.xMin > other.xMin) this.xMin = other.xMin;
+			if (this.yMax < other.yMax) this.yMax = other.yMax;
+			if (this.yMin > other.yMin) this.yMin = other.yMin;
+		}
+		this.index += other.index;
+		return this;
+	}
+
 	public BezRectangle bounds() {
 		BezRectangle bounds = BezRectangle.makeLeftTopRightBottom(parent, xMin, yMin, xMax, yMax);
 		return bounds;
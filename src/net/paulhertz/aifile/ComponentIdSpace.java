@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+
+package net.paulhertz.aifile;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates the 64-bit ids assigned to components when they are constructed. Allocation is lock-free
+ * and safe to call from several threads at once, so scene subtrees can be built concurrently without
+ * duplicate ids.
+ * <p>
+ * By default all components draw their ids from a single global space. A thread can switch to another space
+ * with {@link #setCurrent(ComponentIdSpace)}, for example a document's own space, obtained from
+ * {@link DocumentComponent#idSpace()}. Components constructed on that thread then get ids that are unique
+ * within that space, starting from 0. Remember to restore the global space, by calling
+ * {@code setCurrent(null)}, when you are done.
+ * </p>
+ */
+public class ComponentIdSpace {
+	/** the space used when a thread has not chosen one */
+	private static final ComponentIdSpace globalSpace = new ComponentIdSpace();
+	/** the space chosen by each thread, null for the global space */
+	private static final ThreadLocal<ComponentIdSpace> currentSpace = new ThreadLocal<ComponentIdSpace>();
+	/** next id to allocate */
+	private final AtomicLong nextId;
+
+
+	private ComponentIdSpace() {
+		this.nextId = new AtomicLong(0);
+	}
+
+	/**
+	 * @return   a new id space, which allocates ids starting from 0
+	 */
+	public static ComponentIdSpace makeIdSpace() {
+		return new ComponentIdSpace();
+	}
+
+	/**
+	 * @return   the global id space, shared by all threads that have not chosen another space
+	 */
+	public static ComponentIdSpace globalSpace() {
+		return globalSpace;
+	}
+
+	/**
+	 * @return   the id space used by components constructed on the calling thread
+	 */
+	public static ComponentIdSpace current() {
+		ComponentIdSpace space = currentSpace.get();
+		return (null == space) ? globalSpace : space;
+	}
+
+	/**
+	 * Sets the id space used by components constructed on the calling thread. Other threads are not affected.
+	 * @param space   an id space, or null to return to the global space
+	 */
+	public static void setCurrent(ComponentIdSpace space) {
+		if (null == space || globalSpace == space) {
+			currentSpace.remove();
+		}
+		else {
+			currentSpace.set(space);
+		}
+	}
+
+	/**
+	 * Allocates a new id from this space. Never returns the same id twice.
+	 * @return   a new id
+	 */
+	public long nextId() {
+		return this.nextId.getAndIncrement();
+	}
+
+	/**
+	 * @return   the id that will be allocated next, useful for checking progress
+	 */
+	public long peekId() {
+		return this.nextId.get();
+	}
+
+}
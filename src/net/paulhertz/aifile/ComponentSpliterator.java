@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+
+package net.paulhertz.aifile;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A depth-first {@code Spliterator} over the terminal (leaf) components under a component, such as
+ * {@link net.paulhertz.aifile.BezShape BezShape} and {@link net.paulhertz.aifile.PointText PointText}, in the
+ * order they are drawn and written. It walks the tree as it goes, without building a list of leaves,
+ * and splits by handing out halves of the outermost sibling list that still has more than one component left,
+ * so parallel streams divide the work along layer and group boundaries.
+ * Obtain streams from {@link DisplayComponent#leaves()} and {@link DisplayComponent#shapes()}.
+ * <p>
+ * Shapes apply their pending transforms when their geometry is read. Don't add or remove
+ * components while a traversal is in progress.
+ * </p>
+ */
+public class ComponentSpliterator implements Spliterator<DisplayComponent> {
+	/** sibling ranges still to visit, innermost first */
+	private ArrayDeque<Frame> stack;
+
+
+	private ComponentSpliterator(ArrayDeque<Frame> stack) {
+		this.stack = stack;
+	}
+
+	/**
+	 * @param root   a DisplayComponent
+	 * @return   a Spliterator over the leaves under root, or over root itself if it is a leaf
+	 */
+	public static ComponentSpliterator makeComponentSpliterator(DisplayComponent root) {
+		ArrayDeque<Frame> stack = new ArrayDeque<Frame>();
+		stack.push(new Frame(Collections.singletonList(root), 0, 1));
+		return new ComponentSpliterator(stack);
+	}
+
+
+	@Override
+	public boolean tryAdvance(Consumer<? super DisplayComponent> action) {
+		while (!this.stack.isEmpty()) {
+			Frame frame = this.stack.peek();
+			if (frame.index >= frame.end) {
+				this.stack.pop();
+				continue;
+			}
+			DisplayComponent comp = frame.list.get(frame.index++);
+			if (null == comp.children) {
+				action.accept(comp);
+				return true;
+			}
+			List<DisplayComponent> kids = comp.children();
+			if (!kids.isEmpty()) this.stack.push(new Frame(kids, 0, kids.size()));
+		}
+		return false;
+	}
+
+	@Override
+	public Spliterator<DisplayComponent> trySplit() {
+		while (true) {
+			// find the outermost frame with at least two components left
+			Frame target = null;
+			Iterator<Frame> outermostFirst = this.stack.descendingIterator();
+			while (outermostFirst.hasNext()) {
+				Frame frame = outermostFirst.next();
+				if (frame.end - frame.index >= 2) {
+					target = frame;
+					break;
+				}
+			}
+			if (null == target) {
+				// a single composite left: descend into it and try again
+				Frame only = this.stack.peek();
+				if (1 != this.stack.size() || 1 != only.end - only.index) return null;
+				DisplayComponent comp = only.list.get(only.index);
+				if (null == comp.children || comp.children().size() < 2) return null;
+				this.stack.pop();
+				this.stack.push(new Frame(comp.children(), 0, comp.children().size()));
+				continue;
+			}
+			// the prefix takes the inner frames and the first half of target, we keep the rest
+			int mid = target.index + (target.end - target.index) / 2;
+			ArrayDeque<Frame> prefix = new ArrayDeque<Frame>();
+			while (true) {
+				Frame frame = this.stack.pop();
+				if (frame == target) {
+					prefix.addLast(new Frame(frame.list, frame.index, mid));
+					this.stack.push(new Frame(frame.list, mid, frame.end));
+					break;
+				}
+				prefix.addLast(frame);
+			}
+			return new ComponentSpliterator(prefix);
+		}
+	}
+
+	/**
+	 * @return   the number of components left in the sibling ranges still to visit,
+	 *           a low estimate, since composites among them will expand
+	 */
+	@Override
+	public long estimateSize() {
+		long size = 0;
+		for (Frame frame : this.stack) {
+			size += frame.end - frame.index;
+		}
+		return size;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+
+
+	/**
+	 * A range of siblings still to visit.
+	 */
+	private static class Frame {
+		final List<DisplayComponent> list;
+		int index;
+		final int end;
+
+		Frame(List<DisplayComponent> list, int index, int end) {
+			this.list = list;
+			this.index = index;
+			this.end = end;
+		}
+	}
+
+}
@@ -26,8 +26,90 @@ package net.paulhertz.aifile;
  * of a heterogeneous hierarchy, such as a document or display list. 
  * All methods are empty shells. In your subclass override only those 
  * methods that interest you. 
+ * <p>
+ * A visit method can steer the traversal: call {@link #skipChildren()} to skip the children of the
+ * composite component just visited, or {@link #stop()} to end the traversal at once, for example when
+ * a search has found what it was looking for. Call {@link #reset()} before reusing a stopped visitor.
+ * </p>
  */
 public abstract class ComponentVisitor {
+	/** 
+	 * Traversal control values: continue normally, skip the children of the component just visited, 
+	 * or stop visiting altogether.
+	 */
+	public static enum TraversalControl {CONTINUE, SKIP_CHILDREN, STOP};
+	
+	/** current traversal control, set by visit methods, read by {@code accept} methods */
+	private TraversalControl traversalControl = TraversalControl.CONTINUE;
+	
+	
+	/**
+	 * @return   the current traversal control value
+	 */
+	public TraversalControl traversalControl() {
+		return this.traversalControl;
+	}
+	
+	/**
+	 * @param traversalControl   traversal control value to set
+	 */
+	public void setTraversalControl(TraversalControl traversalControl) {
+		this.traversalControl = traversalControl;
+	}
+	
+	/**
+	 * Asks the component being visited not to visit its children. Has no effect on terminal components 
+	 * or when children are visited first (postorder). 
+	 */
+	public void skipChildren() {
+		if (TraversalControl.STOP != this.traversalControl) this.traversalControl = TraversalControl.SKIP_CHILDREN;
+	}
+	
+	/**
+	 * Ends the traversal: no more components will be visited. In a {@link ParallelTraversal}, only the task 
+	 * that owns this visitor stops, other tasks visit the rest of the tree.
+	 */
+	public void stop() {
+		this.traversalControl = TraversalControl.STOP;
+	}
+	
+	/**
+	 * @return   true if {@link #stop()} has been called since the last {@link #reset()}
+	 */
+	public boolean isStopped() {
+		return TraversalControl.STOP == this.traversalControl;
+	}
+	
+	/**
+	 * Sets traversal control back to {@code CONTINUE}, so the visitor can be used again.
+	 */
+	public void reset() {
+		this.traversalControl = TraversalControl.CONTINUE;
+	}
+	
+	/**
+	 * Called by {@code accept} methods before visiting a composite component. 
+	 * Clears any request to skip children left over from a previous visit.
+	 * @return   false if the traversal has been stopped, true otherwise
+	 */
+	public boolean beginVisit() {
+		if (TraversalControl.STOP == this.traversalControl) return false;
+		this.traversalControl = TraversalControl.CONTINUE;
+		return true;
+	}
+	
+	/**
+	 * Called by {@code accept} methods after visiting a composite component and before visiting its children. 
+	 * Consumes a request to skip children.
+	 * @return   true if the children of the component should be visited
+	 */
+	public boolean visitChildren() {
+		if (TraversalControl.SKIP_CHILDREN == this.traversalControl) {
+			this.traversalControl = TraversalControl.CONTINUE;
+			return false;
+		}
+		return TraversalControl.STOP != this.traversalControl;
+	}
 	
 	/**
 	 * visits a DocumentComponent node
@@ -64,7 +64,7 @@ public class CustomComponent extends DisplayComponent {
 		this.parent = parent;
 		this.tagIdentifier = tagIdentifier;
 		this.tagValue = tagValue;
-    	this.id = DisplayComponent.counter++;
+    	this.id = DisplayComponent.nextId();
 	}
 
 	
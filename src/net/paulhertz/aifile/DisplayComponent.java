@@ -20,8 +20,12 @@ package net.paulhertz.aifile;
 
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import net.paulhertz.geom.Matrix3;
+import net.paulhertz.geom.PathSimplifier;
 
 import processing.core.*;
 
@@ -49,16 +53,34 @@ public abstract class DisplayComponent implements Visitable {
 	protected ArrayList<DisplayComponent> children;
 	/** parent of this component, if there is one */
 	protected DisplayComponent parentComponent;
-	/** unique id for each instantiated object */
-	protected int id;
+	/** unique id for each instantiated object, allocated from the current {@link ComponentIdSpace} */
+	protected long id;
 	/** PApplet for callbacks to Processing drawing environment, etc. Used by constructors */
 	protected PApplet parent;
 	/** locked/enabled status of component, default is false */
 	protected boolean isLocked = false;
 	/** visibility of component, default is true */
 	protected boolean isVisible = true;
-	/** counter static var for assigning component IDs */
-	protected static int counter = 0;
+	/** flags that transforms are composed into {@code pendingTransform} rather than applied at once, default is false */
+	protected boolean isDeferringTransforms = false;
+	/** transform waiting to be applied to the geometry of a shape when it is next read, drawn or written, null if there is none */
+	protected Matrix3 pendingTransform;
+	/** cached bounding rectangle of a composite component, the union of the bounds of its children */
+	protected BezRectangle cachedBounds;
+	/** flags that {@code cachedBounds} must be recalculated before it is next returned */
+	protected boolean boundsNeedUpdate = true;
+	/** flags that a composite component draws from a retained display list, default is false */
+	protected boolean isRetained = false;
+	/** retained display list: PShapes and components that must be drawn directly, null until drawn or after a change */
+	protected ArrayList<Object> retainedList;
+	/** the PGraphics that {@code retainedList} was built for */
+	protected PGraphics retainedTarget;
+	/** flags that a composite component tracks style state while drawing, see setBatchedStyle, default is false */
+	protected boolean isBatchingStyle = false;
+	/** flags that a batching component may reorder its shapes by style, default is false */
+	protected boolean isSortingByStyle = false;
+	/** terminal components in style order, used when {@code isSortingByStyle} is true, null until drawn or after a change */
+	protected ArrayList<DisplayComponent> styleSortedList;
 	
 	
 	/**
@@ -81,7 +103,13 @@ public abstract class DisplayComponent implements Visitable {
 	 * @return   true if component was found and removed, false otherwise.
 	 */
 	public boolean remove(DisplayComponent component) {
-		return this.children().remove(component);
+		boolean isRemoved = this.children().remove(component);
+		if (isRemoved) {
+			this.componentRemoved(component);
+			if (this == component.parentComponent) component.setParentComponent(null);
+			this.invalidateBounds();
+		}
+		return isRemoved;
 	}
 
 	/**
@@ -131,9 +159,20 @@ public abstract class DisplayComponent implements Visitable {
 		return this.children;
 	}
 
-	public int id() {
+	/**
+	 * @return   the id of this component, unique within the {@link ComponentIdSpace} it was allocated from
+	 */
+	public long id() {
 		return this.id;
 	}
+	
+	/**
+	 * Allocates an id for a new component from the id space of the calling thread. Called by constructors.
+	 * @return   a new id
+	 */
+	protected static long nextId() {
+		return ComponentIdSpace.current().nextId();
+	}
 
 	/**
 	 * @return   true if this is a terminal (leaf) component, false if it is a composite component (i.e.
@@ -141,6 +180,16 @@ public abstract class DisplayComponent implements Visitable {
 	 */
 
 	public abstract boolean isTerminal();
+	
+	/**
+	 * Visits this component without visiting its children. Terminal components simply accept the visitor, 
+	 * composite components override this method to call only their own visit method. 
+	 * Used by {@link ParallelTraversal} to hand the children of a composite to other threads.
+	 * @param visitor   a ComponentVisitor
+	 */
+	void acceptSelf(ComponentVisitor visitor) {
+		this.accept(visitor);
+	}
 
 	/**
 	 * @return the isLocked
@@ -166,6 +215,7 @@ public abstract class DisplayComponent implements Visitable {
 	 */
 	public void setVisible(boolean isVisible) {
 		this.isVisible = isVisible;
+		this.appearanceChanged(this);
 	}
 
 	/**
@@ -182,6 +232,267 @@ public abstract class DisplayComponent implements Visitable {
 		this.setVisible(false);
 	}
 
+	/**
+	 * @return   true if transforms are deferred, false if they are applied immediately (the default)
+	 */
+	public boolean isDeferringTransforms() {
+		return isDeferringTransforms;
+	}
+	/**
+	 * Turns deferred transforms on or off. When transforms are deferred, calls to {@code transform()} and 
+	 * (in {@code BezShape}) to {@code translateShape()}, {@code scaleShape()} and {@code rotateShape()} 
+	 * compose a pending matrix instead of rewriting every vertex. The pending matrix is applied once, 
+	 * when geometry is next read, drawn or written. Turning deferred transforms off applies any pending transform.
+	 * Composite components pass the setting on to their current children. A deferred transform of a composite 
+	 * component is passed straight down to the pending matrices of the shapes under it, so a shape reached 
+	 * directly, without going through its parent, still sees the transform. 
+	 * @param isDeferringTransforms   true if transforms should be deferred, false if they should be applied immediately
+	 */
+	public void setDeferTransforms(boolean isDeferringTransforms) {
+		if (!isDeferringTransforms) {
+			this.applyPendingTransform();
+		}
+		this.isDeferringTransforms = isDeferringTransforms;
+		if (null != this.children) {
+			for (DisplayComponent component : this.children) {
+				component.setDeferTransforms(isDeferringTransforms);
+			}
+		}
+	}
+
+	/**
+	 * @return   true if this component has a deferred transform that has not yet been applied, 
+	 *           always false for composite components, which hold no pending transform of their own
+	 */
+	public boolean hasPendingTransform() {
+		return null != this.pendingTransform;
+	}
+	
+	/**
+	 * Composes the supplied matrix with the pending transform of this component. Called internally
+	 * by transform methods when {@code isDeferringTransforms} is true. Composite components pass the 
+	 * matrix on to their children with {@link #transformDeferred(Matrix3)}, which costs a matrix multiply
+	 * for each shape and no work on vertices. 
+	 * @param matx   a Matrix3 that encapsulates an affine geometric transform.
+	 */
+	protected void deferTransform(Matrix3 matx) {
+		if (null != this.children) {
+			for (DisplayComponent component : this.children) {
+				component.transformDeferred(matx);
+			}
+			return;
+		}
+		if (null == this.pendingTransform) {
+			this.pendingTransform = new Matrix3(matx);
+		}
+		else {
+			this.pendingTransform = Matrix3.matrixMultiply(this.pendingTransform, matx, new Matrix3());
+		}
+		this.invalidateBounds();
+		this.geometryChanged(this);
+	}
+	
+	/**
+	 * Transforms this component the way it would be transformed if it were deferring transforms, whatever
+	 * its own setting. Composite components pass the matrix on to their children, {@code BezShape} composes it 
+	 * with its pending transform, other terminal components, such as text, are simply transformed. 
+	 * Called by {@link #deferTransform(Matrix3)} on the children of a composite component. 
+	 * @param matx   a Matrix3 that encapsulates an affine geometric transform.
+	 */
+	protected void transformDeferred(Matrix3 matx) {
+		if (null != this.children) {
+			this.deferTransform(matx);
+		}
+		else {
+			this.transform(matx);
+		}
+	}
+	
+	/**
+	 * Applies the pending transform, if there is one. Terminal components that defer transforms override
+	 * this method to transform their geometry. Composite components pass deferred transforms straight down 
+	 * to their children and hold none of their own, so for them it does nothing. 
+	 * Called for you whenever geometry is read, drawn or written, there is generally no need to call it directly.
+	 */
+	public void applyPendingTransform() {
+		
+	}
+
+	/**
+	 * Returns a depth-first Spliterator over the terminal components under this component, 
+	 * in the order they are drawn. For a terminal component, the Spliterator covers just the component.
+	 * @return   a ComponentSpliterator
+	 */
+	public Spliterator<DisplayComponent> spliterator() {
+		return ComponentSpliterator.makeComponentSpliterator(this);
+	}
+	
+	/**
+	 * Returns a sequential Stream over the terminal components under this component, such as shapes and text, 
+	 * in the order they are drawn. Call {@code parallel()} on it for a parallel stream. The tree is walked 
+	 * as the stream is consumed, no intermediate list is built.
+	 * @return   a Stream of terminal DisplayComponents
+	 */
+	public Stream<DisplayComponent> leaves() {
+		return StreamSupport.stream(this.spliterator(), false);
+	}
+	
+	/**
+	 * Returns a sequential Stream over the BezShapes under this component, in the order they are drawn.
+	 * For example, {@code doc.shapes().parallel().filter(s -> s.hasFill()).count()}.
+	 * @return   a Stream of BezShapes
+	 */
+	public Stream<BezShape> shapes() {
+		return this.leaves().filter(c -> c instanceof BezShape).map(c -> (BezShape) c);
+	}
+	
+	/**
+	 * Thins out the points of the straight line parts of all the BezShapes under this component, 
+	 * see {@link BezShape#simplify(PathSimplifier.Method, float)}. In parallel mode, the simplified points
+	 * are calculated on the threads of the common ForkJoinPool and then stored in the shapes on the calling thread, 
+	 * so notifications to parent components never run concurrently.
+	 * @param method       point-thinning method
+	 * @param tolerance    distance below which points are dropped
+	 * @param isParallel   true to simplify shapes on several threads
+	 * @return   number of points removed
+	 */
+	public int simplifyShapes(PathSimplifier.Method method, float tolerance, boolean isParallel) {
+		List<BezShape> shapeList = this.shapes().collect(Collectors.toList());
+		for (BezShape shape : shapeList) {
+			shape.applyPendingTransform();
+		}
+		Stream<BezShape> stream = isParallel ? shapeList.parallelStream() : shapeList.stream();
+		List<ArrayList<Vertex2DINF>> results = stream.map(shape -> shape.simplifiedCurves(method, tolerance))
+				.collect(Collectors.toList());
+		int removed = 0;
+		for (int i = 0; i < shapeList.size(); i++) {
+			ArrayList<Vertex2DINF> simplified = results.get(i);
+			if (null == simplified) continue;
+			BezShape shape = shapeList.get(i);
+			removed += shape.size() - simplified.size();
+			shape.setCurves(simplified);
+		}
+		return removed;
+	}
+	public int simplifyShapes(PathSimplifier.Method method, float tolerance) {
+		return this.simplifyShapes(method, tolerance, false);
+	}
+
+	/**
+	 * Returns the bounding rectangle of this component. Composite components return the union of the 
+	 * bounds of their children, or null if they contain no geometry. The rectangle is cached: it is
+	 * extended when children are added and recalculated only after a child is removed or transformed, 
+	 * so repeated calls on a large document are cheap. Terminal components with no geometry return null, 
+	 * {@code BezShape} overrides this method to return its own cached bounds. 
+	 * The returned rectangle is shared with the cache, copy it before modifying it. 
+	 * @return   the bounding rectangle of this component, or null if it has no geometry
+	 */
+	public BezRectangle boundsRect() {
+		if (null == this.children) return null;
+		if (this.boundsNeedUpdate) {
+			this.cachedBounds = null;
+			for (DisplayComponent component : this.children) {
+				this.unionBounds(component.boundsRect());
+			}
+			this.boundsNeedUpdate = false;
+		}
+		return this.cachedBounds;
+	}
+	
+	/**
+	 * Flags the cached bounds of this component and of all components up tree from it for recalculation. 
+	 * Called for you when geometry changes or children are removed.
+	 */
+	public void invalidateBounds() {
+		DisplayComponent comp = this;
+		// a component whose bounds are already flagged has all its ancestors flagged, too
+		while (null != comp && !comp.boundsNeedUpdate) {
+			comp.boundsNeedUpdate = true;
+			comp = comp.parentComponent;
+		}
+	}
+	
+	/**
+	 * Extends the cached bounds of this component and its ancestors to include a newly added child. 
+	 * Components whose bounds are waiting for recalculation are left alone, they will pick up the child later.
+	 * @param component   a component just added to the children of this component
+	 */
+	protected void includeBounds(DisplayComponent component) {
+		BezRectangle r = null;
+		DisplayComponent comp = this;
+		while (null != comp && !comp.boundsNeedUpdate) {
+			if (null == r) {
+				r = component.boundsRect();
+				if (null == r) return;
+			}
+			comp.unionBounds(r);
+			comp = comp.parentComponent;
+		}
+	}
+	
+	/**
+	 * Notifies this component and the components up tree from it that a component has been added 
+	 * somewhere below it. Components that keep an index of their descendants override this method
+	 * and call the superclass method to pass the notification on. Called for you by {@code add}.
+	 * @param component   the component that was added, possibly with children of its own
+	 */
+	protected void componentAdded(DisplayComponent component) {
+		this.retainedList = null;
+		this.styleSortedList = null;
+		if (null != this.parentComponent) this.parentComponent.componentAdded(component);
+	}
+	
+	/**
+	 * Notifies this component and the components up tree from it that a component has been removed 
+	 * from somewhere below it. Called for you by {@code remove}, before the parent pointer of 
+	 * {@code component} is cleared.
+	 * @param component   the component that was removed, possibly with children of its own
+	 */
+	protected void componentRemoved(DisplayComponent component) {
+		this.retainedList = null;
+		this.styleSortedList = null;
+		if (null != this.parentComponent) this.parentComponent.componentRemoved(component);
+	}
+	
+	/**
+	 * Notifies this component and the components up tree from it that the geometry of a component 
+	 * has changed. Called for you by transforms and by methods that change the geometry of shapes.
+	 * @param component   the component whose geometry changed
+	 */
+	protected void geometryChanged(DisplayComponent component) {
+		this.retainedList = null;
+		this.styleSortedList = null;
+		if (null != this.parentComponent) this.parentComponent.geometryChanged(component);
+	}
+	
+	/**
+	 * Notifies this component and the components up tree from it that the appearance of a component, 
+	 * such as its visibility, fill or stroke, has changed. Called for you by methods that change appearance. 
+	 * @param component   the component whose appearance changed
+	 */
+	protected void appearanceChanged(DisplayComponent component) {
+		this.retainedList = null;
+		this.styleSortedList = null;
+		if (null != this.parentComponent) this.parentComponent.appearanceChanged(component);
+	}
+	
+	/**
+	 * Extends {@code cachedBounds} to include the supplied rectangle, creating it if necessary.
+	 * @param r   a bounding rectangle, may be null
+	 */
+	private void unionBounds(BezRectangle r) {
+		if (null == r) return;
+		if (null == this.cachedBounds) {
+			this.cachedBounds = BezRectangle.makeLeftTopRightBottom(this.parent, r.getLeft(), r.getTop(), r.getRight(), r.getBottom());
+		}
+		else {
+			this.cachedBounds.setLeftTopRightBottom(Math.min(r.getLeft(), this.cachedBounds.getLeft()), 
+					Math.min(r.getTop(), this.cachedBounds.getTop()), 
+					Math.max(r.getRight(), this.cachedBounds.getRight()), 
+					Math.max(r.getBottom(), this.cachedBounds.getBottom()));
+		}
+	}
+
 	/**
 	 * Draws geometry or text to the Processing window. Component must be flagged as visible (the default).
 	 */
@@ -195,6 +506,266 @@ public abstract class DisplayComponent implements Visitable {
 	 * @param pg   a PGraphics instance	 
 	 */
 	public abstract void  draw(PGraphics pg);
+	
+	/**
+	 * Draws only the components whose bounds overlap a viewport, skipping whole subtrees whose cached bounds 
+	 * miss it. Use it for large scenes where most geometry is off-screen, for example when panning or zooming. 
+	 * @param viewport    visible region, in the same coordinate system as the geometry of this component
+	 * @param pixelSize   size of one pixel in the coordinate system of the geometry: shapes smaller than this 
+	 *                    are drawn as a single point. Pass 0 to draw every shape in full. 
+	 */
+	public void draw(BezRectangle viewport, float pixelSize) {
+		this.drawCulled(null, viewport, pixelSize, null);
+	}
+	/**
+	 * Draws only the components whose bounds overlap a viewport, with level of detail: shapes smaller than a pixel
+	 * are drawn as a single point, small shapes as rectangles and curves as polylines, as set by {@code lod}.
+	 * @param viewport    visible region, in the same coordinate system as the geometry of this component
+	 * @param pixelSize   size of one pixel in the coordinate system of the geometry, greater than 0 
+	 * @param lod         level of detail settings, or null to only draw shapes smaller than a pixel as points
+	 */
+	public void draw(BezRectangle viewport, float pixelSize, LevelOfDetail lod) {
+		this.drawCulled(null, viewport, pixelSize, lod);
+	}
+	/**
+	 * Draws only the components whose bounds overlap a viewport, skipping whole subtrees whose cached bounds 
+	 * miss it. Every visible shape is drawn in full. 
+	 * @param viewport    visible region, in the same coordinate system as the geometry of this component
+	 */
+	public void draw(BezRectangle viewport) {
+		this.drawCulled(null, viewport, 0, null);
+	}
+	/**
+	 * Draws only the components whose bounds overlap a viewport to a supplied PGraphics, 
+	 * skipping whole subtrees whose cached bounds miss it. 
+	 * It's up to the user to call beginDraw() and endDraw() on the PGraphics instance.
+	 * @param pg          a PGraphics instance
+	 * @param viewport    visible region, in the same coordinate system as the geometry of this component
+	 * @param pixelSize   size of one pixel in the coordinate system of the geometry: shapes smaller than this 
+	 *                    are drawn as a single point. Pass 0 to draw every shape in full. 
+	 */
+	public void draw(PGraphics pg, BezRectangle viewport, float pixelSize) {
+		this.drawCulled(pg, viewport, pixelSize, null);
+	}
+	/**
+	 * Draws only the components whose bounds overlap a viewport to a supplied PGraphics, with level of detail: 
+	 * shapes smaller than a pixel are drawn as a single point, small shapes as rectangles and curves as polylines, 
+	 * as set by {@code lod}. It's up to the user to call beginDraw() and endDraw() on the PGraphics instance.
+	 * @param pg          a PGraphics instance
+	 * @param viewport    visible region, in the same coordinate system as the geometry of this component
+	 * @param pixelSize   size of one pixel in the coordinate system of the geometry, greater than 0 
+	 * @param lod         level of detail settings, or null to only draw shapes smaller than a pixel as points
+	 */
+	public void draw(PGraphics pg, BezRectangle viewport, float pixelSize, LevelOfDetail lod) {
+		this.drawCulled(pg, viewport, pixelSize, lod);
+	}
+	/**
+	 * Draws only the components whose bounds overlap a viewport to a supplied PGraphics, 
+	 * skipping whole subtrees whose cached bounds miss it. Every visible shape is drawn in full. 
+	 * @param pg          a PGraphics instance
+	 * @param viewport    visible region, in the same coordinate system as the geometry of this component
+	 */
+	public void draw(PGraphics pg, BezRectangle viewport) {
+		this.drawCulled(pg, viewport, 0, null);
+	}
+	
+	/**
+	 * @return   true if this component draws from a retained display list, false otherwise (the default)
+	 */
+	public boolean isRetained() {
+		return this.isRetained;
+	}
+	/**
+	 * Turns retained drawing on or off for a composite component. A retained component compiles its visible 
+	 * shapes into Processing PShape groups the first time it draws, and afterwards simply draws the PShapes. 
+	 * The display list is rebuilt after any change to the components under it: adding or removing a component, 
+	 * a transform, or a change in visibility, fill, stroke or weight. Text, custom components and marked shapes 
+	 * are drawn directly, in their proper order. Use it for layers or groups that change rarely: with the P2D 
+	 * renderer their geometry is kept on the GPU and redrawing costs next to nothing on the CPU.
+	 * @param isRetained   true to draw from a retained display list, false to draw directly
+	 */
+	public void setRetained(boolean isRetained) {
+		this.isRetained = isRetained;
+		this.retainedList = null;
+	}
+	
+	/**
+	 * Draws from the retained display list, building it first if it is missing or was built for another PGraphics.
+	 * @param pg   a PGraphics instance, or null to draw to the Processing window
+	 */
+	protected void drawRetained(PGraphics pg) {
+		PGraphics g = (null == pg) ? this.parent.g : pg;
+		if (null == this.retainedList || g != this.retainedTarget) {
+			ArrayList<Object> list = new ArrayList<Object>();
+			PShape[] run = new PShape[1];
+			// collecting children may apply pending transforms, which clear retainedList: assign it when done
+			this.compileRetained(this, g, list, run);
+			this.retainedList = list;
+			this.retainedTarget = g;
+		}
+		for (Object item : this.retainedList) {
+			if (item instanceof PShape) {
+				g.shape((PShape) item);
+			}
+			else if (null == pg) {
+				((DisplayComponent) item).draw();
+			}
+			else {
+				((DisplayComponent) item).draw(pg);
+			}
+		}
+	}
+	
+	/**
+	 * Adds the visible descendants of a component to a retained display list. Consecutive shapes go into 
+	 * a single PShape group, other terminal components break the run and are listed for direct drawing.
+	 */
+	private void compileRetained(DisplayComponent comp, PGraphics g, ArrayList<Object> list, PShape[] run) {
+		for (DisplayComponent child : comp.children()) {
+			if (!child.isVisible) continue;
+			if (null != child.children) {
+				this.compileRetained(child, g, list, run);
+			}
+			else if (child instanceof BezShape && !((BezShape) child).isMarked()) {
+				if (null == run[0]) {
+					run[0] = g.createShape(PConstants.GROUP);
+					list.add(run[0]);
+				}
+				run[0].addChild(((BezShape) child).toPShape(g));
+			}
+			else {
+				run[0] = null;
+				list.add(child);
+			}
+		}
+	}
+	
+	/**
+	 * @return   true if this component draws in batched style mode, false otherwise (the default)
+	 */
+	public boolean isBatchedStyle() {
+		return this.isBatchingStyle;
+	}
+	/**
+	 * Turns batched style mode on or off for a composite component. In batched mode, the component keeps
+	 * track of the fill, stroke and weight it last sent to the renderer while drawing the shapes under it, 
+	 * and only calls {@code fill()}, {@code stroke()} and {@code strokeWeight()} when they change. 
+	 * Draw order is unchanged, unless {@link #setSortByStyle(boolean)} is also turned on. 
+	 * Nested groups are drawn as part of the batch. Retained mode, if also set, takes precedence.
+	 * @param isBatchingStyle   true to draw in batched style mode, false to draw each shape with its own style calls
+	 */
+	public void setBatchedStyle(boolean isBatchingStyle) {
+		this.isBatchingStyle = isBatchingStyle;
+	}
+	/**
+	 * @return   true if batched drawing may reorder shapes by style, false otherwise (the default)
+	 */
+	public boolean isSortByStyle() {
+		return this.isSortingByStyle;
+	}
+	/**
+	 * Lets batched drawing reorder the shapes under this component so that shapes with the same style 
+	 * are drawn together, which removes most style changes. Only turn it on when the stacking order of 
+	 * the shapes doesn't matter, for example when they don't overlap. Shapes with equal styles keep their
+	 * order, text and custom components are drawn after all shapes. The order is cached until components 
+	 * are added, removed, transformed or restyled. Has no effect unless batched style mode is on. 
+	 * @param isSortingByStyle   true to draw shapes grouped by style, false to draw them in order
+	 */
+	public void setSortByStyle(boolean isSortingByStyle) {
+		this.isSortingByStyle = isSortingByStyle;
+		this.styleSortedList = null;
+	}
+	
+	/**
+	 * Draws the components under this component in batched style mode.
+	 * @param pg   a PGraphics instance, or null to draw to the Processing window
+	 */
+	protected void drawBatched(PGraphics pg) {
+		PGraphics g = (null == pg) ? this.parent.g : pg;
+		StyleState state = new StyleState();
+		if (!this.isSortingByStyle) {
+			this.drawBatched(this, g, pg, state);
+			return;
+		}
+		if (null == this.styleSortedList) {
+			ArrayList<BezShape> shapes = new ArrayList<BezShape>();
+			ArrayList<DisplayComponent> others = new ArrayList<DisplayComponent>();
+			this.collectVisibleLeaves(this, shapes, others);
+			// List.sort is stable, so shapes with the same style stay in drawing order
+			shapes.sort(StyleState.styleOrder);
+			ArrayList<DisplayComponent> list = new ArrayList<DisplayComponent>(shapes.size() + others.size());
+			list.addAll(shapes);
+			list.addAll(others);
+			this.styleSortedList = list;
+		}
+		for (DisplayComponent comp : this.styleSortedList) {
+			this.drawBatchedLeaf(comp, g, pg, state);
+		}
+	}
+	
+	private void drawBatched(DisplayComponent comp, PGraphics g, PGraphics pg, StyleState state) {
+		for (DisplayComponent child : comp.children()) {
+			if (!child.isVisible) continue;
+			if (null != child.children) {
+				this.drawBatched(child, g, pg, state);
+			}
+			else {
+				this.drawBatchedLeaf(child, g, pg, state);
+			}
+		}
+	}
+	
+	private void drawBatchedLeaf(DisplayComponent comp, PGraphics g, PGraphics pg, StyleState state) {
+		if (comp instanceof BezShape) {
+			((BezShape) comp).drawBatched(g, state);
+			return;
+		}
+		if (null == pg) {
+			comp.draw();
+		}
+		else {
+			comp.draw(pg);
+		}
+		state.reset();
+	}
+	
+	private void collectVisibleLeaves(DisplayComponent comp, ArrayList<BezShape> shapes, ArrayList<DisplayComponent> others) {
+		for (DisplayComponent child : comp.children()) {
+			if (!child.isVisible) continue;
+			if (null != child.children) {
+				this.collectVisibleLeaves(child, shapes, others);
+			}
+			else if (child instanceof BezShape) {
+				shapes.add((BezShape) child);
+			}
+			else {
+				others.add(child);
+			}
+		}
+	}
+	
+	/**
+	 * Culling draw, called by the {@code draw} methods that take a viewport. Components without geometry,
+	 * such as text, are always drawn. A composite whose bounds lie entirely inside the viewport draws its
+	 * children without further tests, unless {@code pixelSize} is greater than 0. 
+	 * @param pg          a PGraphics instance, or null to draw to the Processing window
+	 * @param viewport    visible region
+	 * @param pixelSize   size of one pixel, or 0
+	 * @param lod         level of detail settings, or null
+	 */
+	protected void drawCulled(PGraphics pg, BezRectangle viewport, float pixelSize, LevelOfDetail lod) {
+		if (!this.isVisible && !(this instanceof DocumentComponent)) return;
+		BezRectangle r = this.boundsRect();
+		if (null != r && !viewport.overlaps(r)) return;
+		if (null == this.children || (pixelSize <= 0 && null != r && viewport.contains(r))) {
+			if (null == pg) this.draw(); 
+			else this.draw(pg);
+			return;
+		}
+		for (DisplayComponent component : this.children()) {
+			component.drawCulled(pg, viewport, pixelSize, lod);
+		}
+	}
 
 	/**
 	 * Writes an Adobe Illustrator 7.0 file format encoding structure, geometry and text.
@@ -204,6 +775,8 @@ public abstract class DisplayComponent implements Visitable {
 
 	/**
 	 * Transforms geometry of shapes and location of text using the supplied matrix.
+	 * If {@code isDeferringTransforms} is true, shapes and composite components compose the 
+	 * matrix with a pending transform that is applied when it is needed. 
 	 * @param matx   a Matrix3 that encapsulates an affine geometric transform.
 	 */
 	public abstract void transform(Matrix3 matx);	
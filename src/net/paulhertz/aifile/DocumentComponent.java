@@ -20,9 +20,12 @@ package net.paulhertz.aifile;
 
 import java.awt.Rectangle;
 import java.io.PrintWriter;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.*;
 
 import net.paulhertz.geom.Matrix3;
+import net.paulhertz.geom.RectClipper;
 
 
 import processing.core.PApplet;
@@ -44,9 +47,19 @@ public class DocumentComponent extends DisplayComponent {
 	protected int width = 612; 
 	protected int height = 792; 
 	protected Rectangle bbox;
+	/** rectangle that geometry is clipped to on export, in Processing coordinates, null if there is none */
+	protected BezRectangle clipRect;
 	protected Palette palette;
 	protected LayerComponent defaultLayer;
 	protected static boolean verbose = false;
+	/** spatial index over the shapes in this document, null until requested */
+	protected SpatialIndex spatialIndex;
+	/** id space for components of this document, null until requested */
+	private volatile ComponentIdSpace idSpace;
+	/** index from id to component for all components in this document, null until first needed */
+	private HashMap<Long, IdReference> idIndex;
+	/** queue of index references to components that have been garbage collected */
+	private ReferenceQueue<DisplayComponent> idQueue;
 	private Matrix3 aiTransform;
 	
     // TODO consider whether we automatically run aiTransform, bracketing any write statement that outputs geometry
@@ -69,10 +82,11 @@ public class DocumentComponent extends DisplayComponent {
      * @param title	   Title stored in the document header
      */
     public DocumentComponent(PApplet parent, String title) {
+    	this.parent = parent;
     	this.title = title;
     	this.parentComponent = null;
     	this.children = new ArrayList<DisplayComponent>();
-    	this.id = DisplayComponent.counter++;
+    	this.id = DisplayComponent.nextId();
     }
     /**
 	 * PApplet reference is obtained from initialized {@link net.paulhertz.aifile.IgnoCodeLib IgnoCodeLib}.
@@ -168,6 +182,31 @@ public class DocumentComponent extends DisplayComponent {
 		this.height = height;
 	}
 	
+	/**
+	 * Returns the rectangle that geometry is clipped to when this document is written, or null if there is none.
+	 * @return the clipping rectangle
+	 */
+	public BezRectangle getClipRect() {
+		return clipRect;
+	}
+	/**
+	 * Sets a rectangle, in Processing coordinates, that geometry is clipped to when this document is written, 
+	 * or turns clipping off if {@code clipRect} is null. Clipping is done as each shape is written, 
+	 * so shapes outside the rectangle are never written to the file, and the document itself is not changed. 
+	 * Text is not clipped. See {@link AIFileWriter#setClipRect(float, float, float, float)}.
+	 * @param clipRect the clipping rectangle, or null
+	 */
+	public void setClipRect(BezRectangle clipRect) {
+		this.clipRect = clipRect;
+	}
+	/**
+	 * Clips geometry to the artboard, the rectangle from (0, 0) to the current width and height of this document, 
+	 * when the document is written.
+	 */
+	public void clipToArtboard() {
+		this.clipRect = BezRectangle.makeLeftTopWidthHeight(this.parent, 0, 0, this.width, this.height);
+	}
+	
 	
 	/**
 	 * Returns the bounding box of this document.
@@ -260,11 +299,13 @@ public class DocumentComponent extends DisplayComponent {
 			if (DocumentComponent.verbose) System.out.println("adding Layer id "+ 
 					((LayerComponent)component).id +" \""+ ((LayerComponent)component).getName() +"\" to Document");
 			this.children().add(component);
+			component.setParentComponent(this);
+			this.includeBounds(component);
+			this.componentAdded(component);
 		}
 		else {
 			this.getDefaultLayer().add(component);
 		}
-		component.setParentComponent(this);
 	}
 	
 	/**
@@ -277,8 +318,169 @@ public class DocumentComponent extends DisplayComponent {
 		}
 	}
 
+	/**
+	 * Returns a spatial index over the shapes in this document, creating it the first time it is called.
+	 * Once created, the index is kept up to date as shapes are added, removed and transformed. 
+	 * Use it to find shapes under the mouse or in a region without scanning every shape.
+	 * @return   a SpatialIndex over the BezShapes in this document
+	 */
+	public SpatialIndex spatialIndex() {
+		if (null == this.spatialIndex) {
+			this.spatialIndex = new SpatialIndex(this);
+		}
+		return this.spatialIndex;
+	}
+	
+	/**
+	 * Discards the spatial index of this document, if there is one, so that it no longer has to be maintained.
+	 */
+	public void clearSpatialIndex() {
+		this.spatialIndex = null;
+	}
+
+	/**
+	 * Returns this document's own id space, creating it the first time it is called. Ids allocated from it
+	 * are unique within the space. To give the components of this document ids from this space, call 
+	 * {@code ComponentIdSpace.setCurrent(doc.idSpace())} on each thread that constructs them, 
+	 * and {@code ComponentIdSpace.setCurrent(null)} when done. Components constructed while a thread 
+	 * is using the global space (the default) get globally unique ids. Ids from different spaces may collide,
+	 * so don't mix components from several spaces in one document if you look them up by id. 
+	 * @return   the id space of this document
+	 */
+	public ComponentIdSpace idSpace() {
+		if (null == this.idSpace) {
+			synchronized (this) {
+				if (null == this.idSpace) this.idSpace = ComponentIdSpace.makeIdSpace();
+			}
+		}
+		return this.idSpace;
+	}
+
+	/**
+	 * Returns the component in this document with the supplied id, in constant time. 
+	 * An index of ids is built the first time this method is called and is afterwards kept 
+	 * up to date as components are added to and removed from the document. The index only holds
+	 * weak references, so components that are discarded without being removed do not leak. 
+	 * Components placed directly in a {@code children()} list, bypassing {@code add()}, are not indexed. 
+	 * @param id   the id of a component, as returned by {@link DisplayComponent#id()}
+	 * @return   the component with the supplied id, or null if there is no such component in this document
+	 */
+	public DisplayComponent findComponent(long id) {
+		if (null == this.idIndex) {
+			this.idIndex = new HashMap<Long, IdReference>();
+			this.idQueue = new ReferenceQueue<DisplayComponent>();
+			this.registerIds(this);
+		}
+		this.purgeIds();
+		IdReference ref = this.idIndex.get(id);
+		if (null == ref) return null;
+		DisplayComponent comp = ref.get();
+		if (null == comp || !this.isAncestorOf(comp)) {
+			// component was collected or moved out of this document without our noticing
+			this.idIndex.remove(id);
+			return null;
+		}
+		return comp;
+	}
+	
+	/**
+	 * @param comp   a DisplayComponent
+	 * @return   true if comp is this document or is in this document's tree
+	 */
+	private boolean isAncestorOf(DisplayComponent comp) {
+		while (null != comp) {
+			if (this == comp) return true;
+			comp = comp.parentComponent;
+		}
+		return false;
+	}
+	
+	/**
+	 * Adds a component and all components under it to the id index.
+	 * @param component   a DisplayComponent
+	 */
+	private void registerIds(DisplayComponent component) {
+		ArrayDeque<DisplayComponent> comps = new ArrayDeque<DisplayComponent>();
+		comps.push(component);
+		while (!comps.isEmpty()) {
+			DisplayComponent comp = comps.pop();
+			this.idIndex.put(comp.id, new IdReference(comp, this.idQueue));
+			if (null != comp.children) {
+				for (DisplayComponent kid : comp.children) comps.push(kid);
+			}
+		}
+	}
+	
+	/**
+	 * Removes a component and all components under it from the id index.
+	 * @param component   a DisplayComponent
+	 */
+	private void unregisterIds(DisplayComponent component) {
+		ArrayDeque<DisplayComponent> comps = new ArrayDeque<DisplayComponent>();
+		comps.push(component);
+		while (!comps.isEmpty()) {
+			DisplayComponent comp = comps.pop();
+			IdReference ref = this.idIndex.get(comp.id);
+			if (null != ref && comp == ref.get()) this.idIndex.remove(comp.id);
+			if (null != comp.children) {
+				for (DisplayComponent kid : comp.children) comps.push(kid);
+			}
+		}
+	}
+	
+	/**
+	 * Removes entries for garbage collected components from the id index.
+	 */
+	private void purgeIds() {
+		IdReference ref;
+		while (null != (ref = (IdReference) this.idQueue.poll())) {
+			if (ref == this.idIndex.get(ref.id)) this.idIndex.remove(ref.id);
+		}
+	}
+	
+	/**
+	 * A weak reference to a component that remembers the component's id, so that its entry 
+	 * in the id index can be removed after the component is collected.
+	 */
+	private static class IdReference extends WeakReference<DisplayComponent> {
+		final long id;
+
+		IdReference(DisplayComponent comp, ReferenceQueue<DisplayComponent> queue) {
+			super(comp, queue);
+			this.id = comp.id;
+		}
+	}
+
+	@Override
+	protected void componentAdded(DisplayComponent component) {
+		if (null != this.spatialIndex) this.spatialIndex.markStale(component);
+		if (null != this.idIndex) this.registerIds(component);
+		super.componentAdded(component);
+	}
+
+	@Override
+	protected void componentRemoved(DisplayComponent component) {
+		if (null != this.spatialIndex) this.spatialIndex.removeAll(component);
+		if (null != this.idIndex) this.unregisterIds(component);
+		super.componentRemoved(component);
+	}
+
+	@Override
+	protected void geometryChanged(DisplayComponent component) {
+		if (null != this.spatialIndex) this.spatialIndex.markStale(component);
+		super.geometryChanged(component);
+	}
+
 	@Override
 	public void draw() {
+		if (this.isRetained) {
+			this.drawRetained(null);
+			return;
+		}
+		if (this.isBatchingStyle) {
+			this.drawBatched(null);
+			return;
+		}
 		Iterator<DisplayComponent> iter = this.children().iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
@@ -288,6 +490,14 @@ public class DocumentComponent extends DisplayComponent {
 	
 	@Override
 	public void draw(PGraphics pg) {
+		if (this.isRetained) {
+			this.drawRetained(pg);
+			return;
+		}
+		if (this.isBatchingStyle) {
+			this.drawBatched(pg);
+			return;
+		}
 		Iterator<DisplayComponent> iter = this.children().iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
@@ -343,7 +553,13 @@ public class DocumentComponent extends DisplayComponent {
 	public void write(PrintWriter pw) {
 		writeHeader(pw);
 		runAITransform();
-		writeDisplayList(pw);
+		RectClipper previousClip = beginClip(true);
+		try {
+			writeDisplayList(pw);
+		}
+		finally {
+			endClip(previousClip);
+		}
 		runAITransform();
 		writeTrailer(pw);
 	}
@@ -356,7 +572,13 @@ public class DocumentComponent extends DisplayComponent {
 	public void writeWithAITransform(PrintWriter pw) {
 		writeHeader(pw);
 		runAITransform();
-		writeDisplayList(pw);
+		RectClipper previousClip = beginClip(true);
+		try {
+			writeDisplayList(pw);
+		}
+		finally {
+			endClip(previousClip);
+		}
 		runAITransform();
 		writeTrailer(pw);
 	}
@@ -367,7 +589,13 @@ public class DocumentComponent extends DisplayComponent {
 	 */
 	public void writeNoTransform(PrintWriter pw) {
 		writeHeader(pw);
-		writeDisplayList(pw);
+		RectClipper previousClip = beginClip(false);
+		try {
+			writeDisplayList(pw);
+		}
+		finally {
+			endClip(previousClip);
+		}
 		writeTrailer(pw);
 	}
 
@@ -430,13 +658,46 @@ public class DocumentComponent extends DisplayComponent {
 	public void writeDisplayListWithTransform(ArrayList<DisplayComponent> comps, PrintWriter pw) {
 		Iterator<DisplayComponent> iter = comps.iterator();
 		Matrix3 matx = this.getAITransform();
-		while (iter.hasNext()) {
-			DisplayComponent component = iter.next();
-			component.transform(matx);
-			component.write(pw);
-			component.transform(matx);
+		RectClipper previousClip = beginClip(true);
+		try {
+			while (iter.hasNext()) {
+				DisplayComponent component = iter.next();
+				component.transform(matx);
+				component.write(pw);
+				component.transform(matx);
+			}
+		}
+		finally {
+			endClip(previousClip);
 		}
 	}
+	
+	/**
+	 * Passes the clipping rectangle, if there is one, to {@link AIFileWriter}, so that shapes are clipped as they are written.
+	 * @param isAITransformed   true if geometry has been transformed to the Illustrator coordinate system, 
+	 *                          in which case the rectangle is transformed with it
+	 * @return   the clipping rectangle that {@code AIFileWriter} had before, to pass to {@link #endClip(RectClipper)}
+	 */
+	private RectClipper beginClip(boolean isAITransformed) {
+		RectClipper previous = AIFileWriter.clipRect();
+		if (null == this.clipRect) return previous;
+		float top = this.clipRect.getTop();
+		float bottom = this.clipRect.getBottom();
+		if (isAITransformed) {
+			// same reflection as getAITransform(): y becomes height - y
+			top = this.height - this.clipRect.getBottom();
+			bottom = this.height - this.clipRect.getTop();
+		}
+		AIFileWriter.setClipRect(this.clipRect.getLeft(), top, this.clipRect.getRight(), bottom);
+		return previous;
+	}
+	/**
+	 * Gives {@link AIFileWriter} back the clipping rectangle it had before {@link #beginClip(boolean)}.
+	 * @param previous   the clipping rectangle returned by {@code beginClip}, or null
+	 */
+	private void endClip(RectClipper previous) {
+		AIFileWriter.setClipRect(previous);
+	}
 
 	/**
 	 * Writes trailer portion of an Adobe Illustrator file, flushes and closes output.
@@ -475,6 +736,10 @@ public class DocumentComponent extends DisplayComponent {
 	
 	@Override
 	public void transform(Matrix3 matx) {
+		if (this.isDeferringTransforms) {
+			this.deferTransform(matx);
+			return;
+		}
 		Iterator<DisplayComponent> iter = this.children().iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
@@ -482,18 +747,27 @@ public class DocumentComponent extends DisplayComponent {
 		}
 	}
 
+	@Override
+	void acceptSelf(ComponentVisitor visitor) {
+		visitor.visitDocumentComponent(this);
+	}
+
 	/* (non-Javadoc)
 	 * This is a composite node, it visits the children of this component in preorder traversal, 
-	 * executing a command on the parent first. 
+	 * executing a command on the parent first. Respects the visitor's traversal control: 
+	 * children are skipped after a call to skipChildren() and traversal ends after a call to stop().
 	 * @see net.paulhertz.aifile.Visitable#accept(net.paulhertz.aifile.ComponentVisitor)
 	 */
 	@Override
 	public void accept(ComponentVisitor visitor) {
+		if (!visitor.beginVisit()) return;
 		visitor.visitDocumentComponent(this);
+		if (!visitor.visitChildren()) return;
 		Iterator<DisplayComponent> iter = this.iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
 			component.accept(visitor);
+			if (visitor.isStopped()) return;
 		}
 	}
 
@@ -505,10 +779,12 @@ public class DocumentComponent extends DisplayComponent {
 	@Override
 	public void accept(ComponentVisitor visitor, boolean order) {
 		if (order) {
+			if (!visitor.beginVisit()) return;
 			Iterator<DisplayComponent> iter = this.iterator();
 			while (iter.hasNext()) {
 				DisplayComponent component = iter.next();
 				component.accept(visitor);
+				if (visitor.isStopped()) return;
 			}
 			visitor.visitDocumentComponent(this);
 		}
@@ -1,8 +1,12 @@
 package net.paulhertz.aifile;
 
 
+/**
+ * Visits components to find the component with a given id. For repeated lookups in a document, 
+ * {@link DocumentComponent#findComponent(long)} is much faster, it uses an index instead of visiting the tree.
+ */
 public class FindComponentWithIDVisitor extends ComponentVisitor {
-	private int idToFind;
+	private long idToFind;
 	private DisplayComponent foundComp;
 	private boolean compIsFound;
 	
@@ -10,7 +14,7 @@ public class FindComponentWithIDVisitor extends ComponentVisitor {
 		
 	}	
 	
-	public static FindComponentWithIDVisitor makeFindComponentWithIDVisitor(int idToFind) {
+	public static FindComponentWithIDVisitor makeFindComponentWithIDVisitor(long idToFind) {
 		FindComponentWithIDVisitor v = new FindComponentWithIDVisitor();
 		v.setIdToFind(idToFind);
 		v.setFoundComp(null);
@@ -20,15 +24,18 @@ public class FindComponentWithIDVisitor extends ComponentVisitor {
 	/**
 	 * @return the idToFind
 	 */
-	public int getIdToFind() {
+	public long getIdToFind() {
 		return idToFind;
 	}
 
 	/**
+	 * Sets the id to search for and resets traversal control, so a visitor that has stopped after 
+	 * finding a component can search again.
 	 * @param idToFind the idToFind to set
 	 */
-	public void setIdToFind(int idToFind) {
+	public void setIdToFind(long idToFind) {
 		this.idToFind = idToFind;
+		this.reset();
 	}
 
 	/**
@@ -54,10 +61,11 @@ public class FindComponentWithIDVisitor extends ComponentVisitor {
 	}
 
 	/**
-	 * @param compIsFound the compIsFound to set
+	 * @param compIsFound the compIsFound to set; false also resets traversal control, so the visitor can search again
 	 */
 	public void setCompIsFound(boolean compIsFound) {
 		this.compIsFound = compIsFound;
+		if (!compIsFound) this.reset();
 	}
 
 	/* (non-Javadoc)
@@ -69,6 +77,7 @@ public class FindComponentWithIDVisitor extends ComponentVisitor {
 		if (comp.id() == this.idToFind) {
 			this.foundComp = comp;
 			this.setCompIsFound(true);
+			this.stop();
 		}
 	}
 
@@ -81,6 +90,7 @@ public class FindComponentWithIDVisitor extends ComponentVisitor {
 		if (comp.id() == this.idToFind) {
 			this.foundComp = comp;
 			this.setCompIsFound(true);
+			this.stop();
 		}
 	}
 
@@ -93,6 +103,7 @@ public class FindComponentWithIDVisitor extends ComponentVisitor {
 		if (comp.id() == this.idToFind) {
 			this.foundComp = comp;
 			this.setCompIsFound(true);
+			this.stop();
 		}
 	}
 
@@ -105,6 +116,7 @@ public class FindComponentWithIDVisitor extends ComponentVisitor {
 		if (comp.id() == this.idToFind) {
 			this.foundComp = comp;
 			this.setCompIsFound(true);
+			this.stop();
 		}
 	}
 
@@ -117,6 +129,7 @@ public class FindComponentWithIDVisitor extends ComponentVisitor {
 		if (comp.id() == this.idToFind) {
 			this.foundComp = comp;
 			this.setCompIsFound(true);
+			this.stop();
 		}
 	}
 
@@ -129,6 +142,7 @@ public class FindComponentWithIDVisitor extends ComponentVisitor {
 		if (comp.id() == this.idToFind) {
 			this.foundComp = comp;
 			this.setCompIsFound(true);
+			this.stop();
 		}
 	}
 
@@ -29,7 +29,7 @@ import processing.core.PGraphics;
 
 /**
  * @author paulhz
- * TODO bounding box and geometric center point of group
+ * TODO geometric center point of group
  */
 /**
  * Groups together geometry ({@link net.paulhertz.aifile.BezShape BezShape}), 
@@ -55,7 +55,7 @@ public class GroupComponent extends DisplayComponent {
 	public GroupComponent(PApplet parent) {
 		this.parent = parent;
     	this.children = new ArrayList<DisplayComponent>();
-    	this.id = DisplayComponent.counter++;
+    	this.id = DisplayComponent.nextId();
 	}
 	
 	
@@ -75,6 +75,9 @@ public class GroupComponent extends DisplayComponent {
 		if (DocumentComponent.verbose) System.out.println("Adding "+ component.getClass().getSimpleName() 
 				+" id "+ component.id +" to group id " + this.id);
 		this.children().add(component);
+		component.setParentComponent(this);
+		this.includeBounds(component);
+		this.componentAdded(component);
 	}
 
 	/**
@@ -90,6 +93,14 @@ public class GroupComponent extends DisplayComponent {
 	@Override
 	public void draw() {
 		if (!this.isVisible) return;
+		if (this.isRetained) {
+			this.drawRetained(null);
+			return;
+		}
+		if (this.isBatchingStyle) {
+			this.drawBatched(null);
+			return;
+		}
 		Iterator<DisplayComponent> iter = this.children().iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
@@ -100,6 +111,14 @@ public class GroupComponent extends DisplayComponent {
 	@Override
 	public void draw(PGraphics pg) {
 		if (!this.isVisible) return;
+		if (this.isRetained) {
+			this.drawRetained(pg);
+			return;
+		}
+		if (this.isBatchingStyle) {
+			this.drawBatched(pg);
+			return;
+		}
 		Iterator<DisplayComponent> iter = this.children().iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
@@ -137,6 +156,10 @@ public class GroupComponent extends DisplayComponent {
 
 	@Override
 	public void transform(Matrix3 matx) {
+		if (this.isDeferringTransforms) {
+			this.deferTransform(matx);
+			return;
+		}
 		Iterator<DisplayComponent> iter = this.children().iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
@@ -144,18 +167,27 @@ public class GroupComponent extends DisplayComponent {
 		}
 	}
 
+	@Override
+	void acceptSelf(ComponentVisitor visitor) {
+		visitor.visitGroupComponent(this);
+	}
+
 	/* (non-Javadoc)
 	 * This is a composite node, it visits the children of this component in preorder traversal, 
-	 * executing a command on the parent first. 
+	 * executing a command on the parent first. Respects the visitor's traversal control: 
+	 * children are skipped after a call to skipChildren() and traversal ends after a call to stop().
 	 * @see net.paulhertz.aifile.Visitable#accept(net.paulhertz.aifile.ComponentVisitor)
 	 */
 	@Override
 	public void accept(ComponentVisitor visitor) {
+		if (!visitor.beginVisit()) return;
 		visitor.visitGroupComponent(this);
+		if (!visitor.visitChildren()) return;
 		Iterator<DisplayComponent> iter = this.iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
 			component.accept(visitor);
+			if (visitor.isStopped()) return;
 		}
 	}
 
@@ -167,10 +199,12 @@ public class GroupComponent extends DisplayComponent {
 	@Override
 	public void accept(ComponentVisitor visitor, boolean order) {
 		if (order) {
+			if (!visitor.beginVisit()) return;
 			Iterator<DisplayComponent> iter = this.iterator();
 			while (iter.hasNext()) {
 				DisplayComponent component = iter.next();
 				component.accept(visitor);
+				if (visitor.isStopped()) return;
 			}
 			visitor.visitGroupComponent(this);
 		}
@@ -49,6 +49,8 @@ public class LayerComponent extends DisplayComponent {
 	protected int colorIndex;
 	/** counter for layers, used to automate assignment of {@code name} and {@code colorIndex} */
 	private static int layerCounter = 1;
+	/** spatial index over the shapes in this layer, null until requested */
+	protected SpatialIndex spatialIndex;
 	
     /**
      * PApplet used for calls to the Processing environment is obtained from 
@@ -70,7 +72,7 @@ public class LayerComponent extends DisplayComponent {
     	this.name = name;
     	this.colorIndex = colorIndex;
     	this.children = new ArrayList<DisplayComponent>();
-    	this.id = DisplayComponent.counter++;
+    	this.id = DisplayComponent.nextId();
      }
     /**
      * @param parent   PApplet used for calls to the Processing environment
@@ -160,6 +162,8 @@ public class LayerComponent extends DisplayComponent {
 				" id "+ component.id +" to Layer id "+ this.id +" \""+ this.getName() + "\"");
 		this.children().add(component);
 		component.setParentComponent(this);
+		this.includeBounds(component);
+		this.componentAdded(component);
 	}
 
 	/**
@@ -172,9 +176,55 @@ public class LayerComponent extends DisplayComponent {
 		}
 	}
 
+	/**
+	 * Returns a spatial index over the shapes in this layer, creating it the first time it is called.
+	 * Once created, the index is kept up to date as shapes are added, removed and transformed. 
+	 * Use it to find shapes under the mouse or in a region without scanning every shape.
+	 * @return   a SpatialIndex over the BezShapes in this layer
+	 */
+	public SpatialIndex spatialIndex() {
+		if (null == this.spatialIndex) {
+			this.spatialIndex = new SpatialIndex(this);
+		}
+		return this.spatialIndex;
+	}
+	
+	/**
+	 * Discards the spatial index of this layer, if there is one, so that it no longer has to be maintained.
+	 */
+	public void clearSpatialIndex() {
+		this.spatialIndex = null;
+	}
+
+	@Override
+	protected void componentAdded(DisplayComponent component) {
+		if (null != this.spatialIndex) this.spatialIndex.markStale(component);
+		super.componentAdded(component);
+	}
+
+	@Override
+	protected void componentRemoved(DisplayComponent component) {
+		if (null != this.spatialIndex) this.spatialIndex.removeAll(component);
+		super.componentRemoved(component);
+	}
+
+	@Override
+	protected void geometryChanged(DisplayComponent component) {
+		if (null != this.spatialIndex) this.spatialIndex.markStale(component);
+		super.geometryChanged(component);
+	}
+
 	@Override
 	public void draw() {
 		if (!this.isVisible) return;
+		if (this.isRetained) {
+			this.drawRetained(null);
+			return;
+		}
+		if (this.isBatchingStyle) {
+			this.drawBatched(null);
+			return;
+		}
 		Iterator<DisplayComponent> iter = this.children().iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
@@ -185,6 +235,14 @@ public class LayerComponent extends DisplayComponent {
 	@Override
 	public void draw(PGraphics pg) {
 		if (!this.isVisible) return;
+		if (this.isRetained) {
+			this.drawRetained(pg);
+			return;
+		}
+		if (this.isBatchingStyle) {
+			this.drawBatched(pg);
+			return;
+		}
 		Iterator<DisplayComponent> iter = this.children().iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
@@ -211,6 +269,10 @@ public class LayerComponent extends DisplayComponent {
 
 	@Override
 	public void transform(Matrix3 matx) {
+		if (this.isDeferringTransforms) {
+			this.deferTransform(matx);
+			return;
+		}
 		Iterator<DisplayComponent> iter = this.children().iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
@@ -218,18 +280,27 @@ public class LayerComponent extends DisplayComponent {
 		}
 	}	
 
+	@Override
+	void acceptSelf(ComponentVisitor visitor) {
+		visitor.visitLayerComponent(this);
+	}
+
 	/* (non-Javadoc)
 	 * This is a composite node, it visits the children of this component in preorder traversal, 
-	 * executing a command on the parent first. 
+	 * executing a command on the parent first. Respects the visitor's traversal control: 
+	 * children are skipped after a call to skipChildren() and traversal ends after a call to stop().
 	 * @see net.paulhertz.aifile.Visitable#accept(net.paulhertz.aifile.ComponentVisitor)
 	 */
 	@Override
 	public void accept(ComponentVisitor visitor) {
+		if (!visitor.beginVisit()) return;
 		visitor.visitLayerComponent(this);
+		if (!visitor.visitChildren()) return;
 		Iterator<DisplayComponent> iter = this.iterator();
 		while (iter.hasNext()) {
 			DisplayComponent component = iter.next();
 			component.accept(visitor);
+			if (visitor.isStopped()) return;
 		}
 	}
 
@@ -241,10 +312,12 @@ public class LayerComponent extends DisplayComponent {
 	@Override
 	public void accept(ComponentVisitor visitor, boolean order) {
 		if (order) {
+			if (!visitor.beginVisit()) return;
 			Iterator<DisplayComponent> iter = this.iterator();
 			while (iter.hasNext()) {
 				DisplayComponent component = iter.next();
 				component.accept(visitor);
+				if (visitor.isStopped()) return;
 			}
 			visitor.visitLayerComponent(this);
 		}
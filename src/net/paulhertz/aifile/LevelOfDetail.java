@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ * 
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ * 
+ */
+
+
+package net.paulhertz.aifile;
+
+/**
+ * Settings for level of detail drawing, passed to the {@code draw} methods that take a viewport and a pixel size
+ * (see {@link DisplayComponent#draw(processing.core.PGraphics, BezRectangle, float, LevelOfDetail)}) and to 
+ * {@link TiledRenderer#setLevelOfDetail(LevelOfDetail)}. With level of detail, shapes smaller than 
+ * {@code rectSize} pixels are drawn as rectangles and curves are drawn as polylines that stay within 
+ * {@code tolerance} pixels of the curves, which makes zoomed-out views of large scenes much faster to draw.
+ * Instances are immutable, so one can be shared by threads that draw at the same time.
+ */
+public class LevelOfDetail {
+	/** default maximum distance in pixels between a curve and its polyline */
+	public static final float DEFAULT_TOLERANCE = 0.25f;
+	/** default size in pixels below which shapes are drawn as rectangles */
+	public static final float DEFAULT_RECT_SIZE = 3.0f;
+	private final float tolerance;
+	private final float rectSize;
+
+
+	private LevelOfDetail(float tolerance, float rectSize) {
+		this.tolerance = tolerance;
+		this.rectSize = rectSize;
+	}
+
+	/**
+	 * @param tolerance   maximum distance in pixels between a curve and its polyline, 
+	 *                    0 to draw curves as Bezier curves
+	 * @param rectSize    size in pixels below which shapes are drawn as rectangles, 0 to turn rectangles off
+	 * @return   a new LevelOfDetail
+	 */
+	public static LevelOfDetail makeLevelOfDetail(float tolerance, float rectSize) {
+		if (tolerance < 0 || rectSize < 0) {
+			throw new IllegalArgumentException("Tolerance and rectangle size must not be negative.");
+		}
+		return new LevelOfDetail(tolerance, rectSize);
+	}
+	/**
+	 * @return   a new LevelOfDetail with the default tolerance of 0.25 pixels and rectangle size of 3 pixels
+	 */
+	public static LevelOfDetail makeLevelOfDetail() {
+		return new LevelOfDetail(DEFAULT_TOLERANCE, DEFAULT_RECT_SIZE);
+	}
+
+
+	/**
+	 * @return   maximum distance in pixels between a curve and the polyline that stands in for it
+	 */
+	public float tolerance() {
+		return this.tolerance;
+	}
+
+	/**
+	 * @return   size in pixels below which shapes are drawn as rectangles
+	 */
+	public float rectSize() {
+		return this.rectSize;
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+
+package net.paulhertz.aifile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.ObjIntConsumer;
+
+import processing.core.PApplet;
+
+/**
+ * Builds parts of a document in parallel. Each task fills its own detached
+ * {@link net.paulhertz.aifile.LayerComponent LayerComponent} or {@link net.paulhertz.aifile.GroupComponent GroupComponent}
+ * on a worker thread. When all tasks are done, the layers or groups are added to their destination
+ * on the calling thread, in task order. The structure of the resulting document, and so the order in which it
+ * is drawn and written to file, is the same as if the tasks had run one after another.
+ * <p>
+ * Component ids are allocated safely from all threads (see {@link ComponentIdSpace}), and workers use the
+ * id space of the calling thread. Ids of components created inside tasks are unique but their order depends
+ * on thread scheduling. Tasks may create and add components and call geometry methods, but must not call
+ * Processing drawing methods or touch components outside the layer or group they were given.
+ * </p>
+ */
+public class ParallelBuilder {
+	/** executor that runs build tasks */
+	private ExecutorService executor;
+
+
+	private ParallelBuilder(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @return   a ParallelBuilder that runs tasks on the common ForkJoinPool
+	 */
+	public static ParallelBuilder makeParallelBuilder() {
+		return new ParallelBuilder(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param executor   an ExecutorService to run build tasks
+	 * @return   a ParallelBuilder that runs tasks on the supplied executor
+	 */
+	public static ParallelBuilder makeParallelBuilder(ExecutorService executor) {
+		return new ParallelBuilder(executor);
+	}
+
+
+	/**
+	 * Creates {@code count} new layers, fills them in parallel and adds them to a document in order.
+	 * Layers are created on the calling thread, so their names and colors are assigned in order, too.
+	 * @param doc     the DocumentComponent to receive the layers
+	 * @param count   number of layers to build
+	 * @param task    called once for each layer, with the layer to fill and its index, from 0 to count - 1
+	 * @return   the new layers, in order
+	 */
+	public ArrayList<LayerComponent> buildLayers(DocumentComponent doc, int count, ObjIntConsumer<LayerComponent> task) {
+		ArrayList<LayerComponent> layers = new ArrayList<LayerComponent>(count);
+		for (int i = 0; i < count; i++) {
+			layers.add(new LayerComponent(doc.parent));
+		}
+		this.runAll(layers, task);
+		for (LayerComponent layer : layers) {
+			doc.add(layer);
+		}
+		return layers;
+	}
+
+	/**
+	 * Creates {@code count} new groups, fills them in parallel and adds them to a layer, group or document in order.
+	 * Groups added to a document go to its default layer.
+	 * @param target   the component to receive the groups
+	 * @param count    number of groups to build
+	 * @param task     called once for each group, with the group to fill and its index, from 0 to count - 1
+	 * @return   the new groups, in order
+	 */
+	public ArrayList<GroupComponent> buildGroups(DisplayComponent target, int count, ObjIntConsumer<GroupComponent> task) {
+		ArrayList<GroupComponent> groups = this.buildGroups(target.parent, count, task);
+		for (GroupComponent group : groups) {
+			target.add(group);
+		}
+		return groups;
+	}
+
+	/**
+	 * Creates {@code count} new groups and fills them in parallel, without adding them to anything.
+	 * @param parent   PApplet used for calls to the Processing environment
+	 * @param count    number of groups to build
+	 * @param task     called once for each group, with the group to fill and its index, from 0 to count - 1
+	 * @return   the new groups, in order
+	 */
+	public ArrayList<GroupComponent> buildGroups(PApplet parent, int count, ObjIntConsumer<GroupComponent> task) {
+		ArrayList<GroupComponent> groups = new ArrayList<GroupComponent>(count);
+		for (int i = 0; i < count; i++) {
+			groups.add(new GroupComponent(parent));
+		}
+		this.runAll(groups, task);
+		return groups;
+	}
+
+	/**
+	 * Runs a task for each component on the executor and waits for all of them to finish.
+	 * If a task throws an exception, it is rethrown on the calling thread.
+	 */
+	private <T extends DisplayComponent> void runAll(List<T> comps, final ObjIntConsumer<T> task) {
+		final ComponentIdSpace idSpace = ComponentIdSpace.current();
+		ArrayList<Callable<Object>> calls = new ArrayList<Callable<Object>>(comps.size());
+		for (int i = 0; i < comps.size(); i++) {
+			final T comp = comps.get(i);
+			final int index = i;
+			calls.add(() -> {
+				ComponentIdSpace saved = ComponentIdSpace.current();
+				ComponentIdSpace.setCurrent(idSpace);
+				try {
+					task.accept(comp, index);
+				}
+				finally {
+					ComponentIdSpace.setCurrent(saved);
+				}
+				return null;
+			});
+		}
+		try {
+			for (Future<Object> future : this.executor.invokeAll(calls)) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while building components.", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+
+package net.paulhertz.aifile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Runs a {@link net.paulhertz.aifile.ComponentVisitor ComponentVisitor} over a component tree on several threads.
+ * The children of documents, layers and groups are split into fork/join tasks. Each task visits its share of
+ * the tree, in preorder, with its own visitor instance obtained from a {@code Supplier}, so visitors never need
+ * to be thread-safe. The visitors are then merged pairwise, in tree order, with a combiner, for example:
+ * <pre>
+ * BoundsCalculationVisitor bounds = ParallelTraversal.visit(doc,
+ *     BoundsCalculationVisitor::makeBoundsCalculationVisitor, BoundsCalculationVisitor::combine);
+ * </pre>
+ * The supplier must return a new visitor every time it is called, even for visitors that keep no results: 
+ * every visitor carries the traversal control state of its task. 
+ * <p>
+ * Visitors may change the attributes and geometry of the components they visit, but must not add or remove
+ * components or touch components they were not handed. Pending transforms are applied before the traversal 
+ * starts. A call to {@code skipChildren()} is respected. A call to {@code stop()} only ends the task that made it: 
+ * other tasks, including those visiting the rest of the same sibling list, run to the end.
+ * </p>
+ */
+public class ParallelTraversal {
+	/** number of sibling components below which a task stops splitting and visits them itself */
+	public static final int THRESHOLD = 512;
+
+
+	private ParallelTraversal() {
+
+	}
+
+
+	/**
+	 * Visits all components under and including {@code root} in parallel on the common ForkJoinPool
+	 * and merges the results.
+	 * @param root       the component to start from
+	 * @param factory    supplies a new visitor for each task
+	 * @param combiner   merges two visitors into one, the first covering components that precede those of the second
+	 * @return   the merged visitor
+	 * @throws IllegalArgumentException   if the factory returns a visitor it has returned before
+	 */
+	public static <V extends ComponentVisitor> V visit(DisplayComponent root, Supplier<V> factory, BinaryOperator<V> combiner) {
+		return visit(root, factory, combiner, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Visits all components under and including {@code root} in parallel on the supplied pool and merges the results.
+	 * @param root       the component to start from
+	 * @param factory    supplies a new visitor for each task
+	 * @param combiner   merges two visitors into one, the first covering components that precede those of the second
+	 * @param pool       a ForkJoinPool to run tasks
+	 * @return   the merged visitor
+	 * @throws IllegalArgumentException   if the factory returns a visitor it has returned before
+	 */
+	public static <V extends ComponentVisitor> V visit(DisplayComponent root, Supplier<V> factory, BinaryOperator<V> combiner,
+			ForkJoinPool pool) {
+		applyPendingTransforms(root);
+		ArrayList<DisplayComponent> top = new ArrayList<DisplayComponent>(1);
+		top.add(root);
+		// a visitor shared by two tasks would let one task reset the skipChildren() or stop() of another
+		final Set<ComponentVisitor> issued = Collections.synchronizedSet(
+				Collections.newSetFromMap(new IdentityHashMap<ComponentVisitor, Boolean>()));
+		Supplier<V> fresh = () -> {
+			V visitor = factory.get();
+			if (!issued.add(visitor)) {
+				throw new IllegalArgumentException("The visitor factory must return a new visitor for each task.");
+			}
+			return visitor;
+		};
+		return pool.invoke(new VisitTask<V>(top, 0, 1, fresh, combiner));
+	}
+
+	/**
+	 * Visits all components under and including {@code root} in parallel, for visitors that only change components
+	 * and have no results to merge, such as {@link ShapeAttributeVisitor}.
+	 * @param root       the component to start from
+	 * @param factory    supplies a new visitor for each task
+	 * @throws IllegalArgumentException   if the factory returns a visitor it has returned before
+	 */
+	public static void visit(DisplayComponent root, Supplier<? extends ComponentVisitor> factory) {
+		visit(root, factory::get, (a, b) -> a);
+	}
+
+
+	/**
+	 * Applies pending transforms of the shapes under a component, on the calling thread, so that tasks never
+	 * propagate changes up the tree concurrently.
+	 */
+	private static void applyPendingTransforms(DisplayComponent comp) {
+		if (null == comp.children) {
+			comp.applyPendingTransform();
+			return;
+		}
+		for (DisplayComponent kid : comp.children()) {
+			applyPendingTransforms(kid);
+		}
+	}
+
+
+	/**
+	 * Visits a range of siblings. Large ranges are split in half, composite siblings are visited
+	 * and their children handed to new tasks.
+	 */
+	@SuppressWarnings("serial")
+	private static class VisitTask<V extends ComponentVisitor> extends RecursiveTask<V> {
+		private final List<DisplayComponent> comps;
+		private final int lo, hi;
+		private final Supplier<V> factory;
+		private final BinaryOperator<V> combiner;
+
+		VisitTask(List<DisplayComponent> comps, int lo, int hi, Supplier<V> factory, BinaryOperator<V> combiner) {
+			this.comps = comps;
+			this.lo = lo;
+			this.hi = hi;
+			this.factory = factory;
+			this.combiner = combiner;
+		}
+
+		@Override
+		protected V compute() {
+			if (hi - lo > THRESHOLD) {
+				int mid = (lo + hi) >>> 1;
+				VisitTask<V> left = new VisitTask<V>(comps, lo, mid, factory, combiner);
+				left.fork();
+				V right = new VisitTask<V>(comps, mid, hi, factory, combiner).compute();
+				return combiner.apply(left.join(), right);
+			}
+			// partial results in tree order: visitors, or tasks forked for the children of composites
+			ArrayList<Object> parts = new ArrayList<Object>();
+			V visitor = factory.get();
+			parts.add(visitor);
+			for (int i = lo; i < hi; i++) {
+				DisplayComponent comp = comps.get(i);
+				if (visitor.isStopped()) break;
+				if (null == comp.children) {
+					comp.accept(visitor);
+					continue;
+				}
+				if (!visitor.beginVisit()) break;
+				comp.acceptSelf(visitor);
+				if (!visitor.visitChildren() || comp.children.isEmpty()) continue;
+				VisitTask<V> kids = new VisitTask<V>(comp.children, 0, comp.children.size(), factory, combiner);
+				kids.fork();
+				parts.add(kids);
+				visitor = factory.get();
+				parts.add(visitor);
+			}
+			V result = null;
+			for (Object part : parts) {
+				@SuppressWarnings("unchecked")
+				V v = (part instanceof VisitTask) ? ((VisitTask<V>) part).join() : (V) part;
+				result = (null == result) ? v : combiner.apply(result, v);
+			}
+			return result;
+		}
+	}
+
+}
@@ -136,7 +136,7 @@ public class PointText extends DisplayComponent {
 		this.setTx(tx);
 		this.setTy(ty);
 		this.setText(text);
-	   	this.id = DisplayComponent.counter++;
+	   	this.id = DisplayComponent.nextId();
 	}
 	/**
 	 * Creates a new PointText displaced (ty,ty) from the origin (0,0).
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+
+package net.paulhertz.aifile;
+
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Boolean operations on BezShapes: union, intersection, difference and exclusive or. Shapes are converted to
+ * {@code java.awt.geom.Area}, which combines outlines with a sweep over their edges and keeps cubic curves as curves,
+ * so results are exact rather than flattened. Shapes are treated as closed and filled with the even-odd rule.
+ * <p>
+ * A result can have several separate regions, some with holes. Results are returned as lists of shapes, 
+ * one for each region. BezShape holds a single path, so each hole is merged into the shape of its region 
+ * as a loop running the other way, joined to the outline by a line that goes there and back. The line encloses 
+ * no area, so fills leave holes empty, but it is drawn by a stroke. Results take their fill, stroke and weight 
+ * from the first operand.
+ * </p>
+ */
+public class ShapeBoolean {
+
+	private ShapeBoolean() {
+
+	}
+
+
+	/**
+	 * @return   one shape for each region, with its holes, of the area covered by a or b
+	 */
+	public static ArrayList<BezShape> union(BezShape a, BezShape b) {
+		Area area = new Area(a.toPath());
+		area.add(new Area(b.toPath()));
+		return toShapes(area, a);
+	}
+
+	/**
+	 * @return   one shape for each region, with its holes, of the area covered by both a and b
+	 */
+	public static ArrayList<BezShape> intersection(BezShape a, BezShape b) {
+		Area area = new Area(a.toPath());
+		area.intersect(new Area(b.toPath()));
+		return toShapes(area, a);
+	}
+
+	/**
+	 * @return   one shape for each region, with its holes, of the area covered by a and not by b
+	 */
+	public static ArrayList<BezShape> difference(BezShape a, BezShape b) {
+		Area area = new Area(a.toPath());
+		area.subtract(new Area(b.toPath()));
+		return toShapes(area, a);
+	}
+
+	/**
+	 * @return   one shape for each region, with its holes, of the area covered by a or b but not both
+	 */
+	public static ArrayList<BezShape> xor(BezShape a, BezShape b) {
+		Area area = new Area(a.toPath());
+		area.exclusiveOr(new Area(b.toPath()));
+		return toShapes(area, a);
+	}
+
+	/**
+	 * Merges many shapes into the area they cover together. Shapes are merged in pairs,
+	 * then pairs of pairs, and so on, so each merge combines outlines of similar size, which is much faster
+	 * than adding shapes to a growing area one at a time.
+	 * @param shapes       shapes to merge, at least one
+	 * @param isParallel   true to merge the pairs at each level on the threads of the common ForkJoinPool
+	 * @return   one shape for each region of the union, with its holes, styled like the first shape
+	 */
+	public static ArrayList<BezShape> unionAll(List<? extends BezShape> shapes, boolean isParallel) {
+		if (shapes.isEmpty()) {
+			throw new IllegalArgumentException("unionAll needs at least one shape.");
+		}
+		// paths are built on the calling thread, which applies any pending transforms
+		final Area[] areas = new Area[shapes.size()];
+		for (int i = 0; i < areas.length; i++) {
+			areas[i] = new Area(shapes.get(i).toPath());
+		}
+		int count = areas.length;
+		while (count > 1) {
+			final int pairs = count / 2;
+			IntStream merges = IntStream.range(0, pairs);
+			if (isParallel) merges = merges.parallel();
+			merges.forEach(i -> areas[2 * i].add(areas[2 * i + 1]));
+			// compact the merged areas to the front, carrying an odd one over
+			for (int i = 0; i < pairs; i++) {
+				areas[i] = areas[2 * i];
+			}
+			if (1 == count % 2) areas[pairs] = areas[count - 1];
+			count = pairs + count % 2;
+		}
+		return toShapes(areas[0], shapes.get(0));
+	}
+	public static ArrayList<BezShape> unionAll(List<? extends BezShape> shapes) {
+		return unionAll(shapes, false);
+	}
+
+
+	/**
+	 * Converts the outlines of an Area to closed BezShapes with the style of a template shape, one for each outer
+	 * outline. Outlines inside an odd number of other outlines are holes. Each hole is merged into the outline 
+	 * that directly contains it, as a loop that runs in the opposite direction, joined to the nearest vertex 
+	 * of the outline by a line that is traversed there and back. The line encloses no area, so the hole stays 
+	 * empty with both the even-odd and the nonzero fill rule.
+	 * <p>
+	 * Outlines are tested for containment from the largest to the smallest, and only against larger outlines 
+	 * whose bounding boxes overlap their own, so outlines that lie apart cost no path tests. An outline is tested 
+	 * with a point just inside one of its edges, since its vertices may touch the outline around it.
+	 * </p>
+	 */
+	static ArrayList<BezShape> toShapes(Area area, BezShape template) {
+		ArrayList<ArrayList<float[]>> loops = loops(area);
+		int n = loops.size();
+		Path2D.Float[] paths = new Path2D.Float[n];
+		Rectangle2D[] boxes = new Rectangle2D[n];
+		float[] areas = new float[n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			paths[i] = toPath(loops.get(i));
+			boxes[i] = paths[i].getBounds2D();
+			areas[i] = signedArea(paths[i]);
+			order[i] = i;
+		}
+		// a loop can only lie inside a larger one
+		Arrays.sort(order, (a, b) -> Float.compare(Math.abs(areas[b]), Math.abs(areas[a])));
+		// depth of each loop, the number of other loops around it, and the smallest loop around it
+		int[] depth = new int[n];
+		int[] container = new int[n];
+		for (int oi = 0; oi < n; oi++) {
+			int i = order[oi];
+			container[i] = -1;
+			float[] pt = null;
+			for (int oj = 0; oj < oi; oj++) {
+				int j = order[oj];
+				if (!overlaps(boxes[i], boxes[j])) continue;
+				if (null == pt) pt = interiorPoint(loops.get(i), paths[i], areas[i]);
+				if (paths[j].contains(pt[0], pt[1])) {
+					depth[i]++;
+					container[i] = j;
+				}
+			}
+		}
+		// holes for each outer loop
+		ArrayList<ArrayList<Integer>> holes = new ArrayList<ArrayList<Integer>>(n);
+		for (int i = 0; i < n; i++) holes.add(new ArrayList<Integer>());
+		for (int i = 0; i < n; i++) {
+			if (1 == depth[i] % 2 && 0 != areas[i]) holes.get(container[i]).add(i);
+		}
+		ArrayList<BezShape> result = new ArrayList<BezShape>();
+		for (int i = 0; i < n; i++) {
+			// skip holes, and slivers with no area that Area can leave where curves meet
+			if (1 == depth[i] % 2 || 0 == areas[i]) continue;
+			ArrayList<float[]> outline = loops.get(i);
+			// holes to visit after each segment of the outline
+			ArrayList<ArrayList<ArrayList<float[]>>> visits = new ArrayList<ArrayList<ArrayList<float[]>>>(outline.size());
+			for (int k = 0; k < outline.size(); k++) visits.add(null);
+			for (int h : holes.get(i)) {
+				ArrayList<float[]> hole = loops.get(h);
+				if ((areas[h] > 0) == (areas[i] > 0)) hole = reverse(hole);
+				int k = nearestEnd(outline, hole.get(0));
+				if (null == visits.get(k)) visits.set(k, new ArrayList<ArrayList<float[]>>());
+				visits.get(k).add(hole);
+			}
+			float[] first = outline.get(0);
+			BezShape shape = new BezShape(template.parent, first[0], first[1], true);
+			shape.setFillColor(template.fillColor());
+			shape.setHasFill(template.hasFill());
+			shape.setStrokeColor(template.strokeColor());
+			shape.setHasStroke(template.hasStroke());
+			shape.setWeight(template.weight());
+			for (int k = 0; k < outline.size(); k++) {
+				float[] seg = outline.get(k);
+				append(shape, seg);
+				if (null == visits.get(k)) continue;
+				float ex = seg[seg.length - 2], ey = seg[seg.length - 1];
+				for (ArrayList<float[]> hole : visits.get(k)) {
+					float[] start = hole.get(0);
+					if (start[0] != ex || start[1] != ey) shape.append(start[0], start[1]);
+					for (float[] hs : hole) append(shape, hs);
+					float[] end = hole.get(hole.size() - 1);
+					if (end[end.length - 2] != ex || end[end.length - 1] != ey) shape.append(ex, ey);
+				}
+			}
+			result.add(shape);
+		}
+		return result;
+	}
+
+	/**
+	 * Collects the closed loops of an Area as lists of segments, each a line of 4 floats, x0, y0, x1, y1, 
+	 * or a cubic curve of 8 floats, x0, y0, cx1, cy1, cx2, cy2, x1, y1. Quadratic curves are raised to cubics.
+	 * Every loop ends where it starts.
+	 */
+	private static ArrayList<ArrayList<float[]>> loops(Area area) {
+		ArrayList<ArrayList<float[]>> loops = new ArrayList<ArrayList<float[]>>();
+		PathIterator it = area.getPathIterator(null);
+		float[] c = new float[6];
+		ArrayList<float[]> loop = null;
+		float startX = 0, startY = 0, lastX = 0, lastY = 0;
+		while (!it.isDone()) {
+			switch (it.currentSegment(c)) {
+			case PathIterator.SEG_MOVETO:
+				closeLoop(loops, loop, lastX, lastY, startX, startY);
+				loop = new ArrayList<float[]>();
+				startX = lastX = c[0];
+				startY = lastY = c[1];
+				break;
+			case PathIterator.SEG_LINETO:
+				loop.add(new float[] {lastX, lastY, c[0], c[1]});
+				lastX = c[0];
+				lastY = c[1];
+				break;
+			case PathIterator.SEG_QUADTO:
+				// raise the quadratic to a cubic with the same shape
+				loop.add(new float[] {lastX, lastY, lastX + 2 * (c[0] - lastX) / 3, lastY + 2 * (c[1] - lastY) / 3,
+						c[2] + 2 * (c[0] - c[2]) / 3, c[3] + 2 * (c[1] - c[3]) / 3, c[2], c[3]});
+				lastX = c[2];
+				lastY = c[3];
+				break;
+			case PathIterator.SEG_CUBICTO:
+				loop.add(new float[] {lastX, lastY, c[0], c[1], c[2], c[3], c[4], c[5]});
+				lastX = c[4];
+				lastY = c[5];
+				break;
+			case PathIterator.SEG_CLOSE:
+				closeLoop(loops, loop, lastX, lastY, startX, startY);
+				loop = null;
+				lastX = startX;
+				lastY = startY;
+				break;
+			}
+			it.next();
+		}
+		closeLoop(loops, loop, lastX, lastY, startX, startY);
+		return loops;
+	}
+
+	/**
+	 * Adds a loop to the list of loops, with a line back to its start if it needs one, unless it has no segments.
+	 */
+	private static void closeLoop(ArrayList<ArrayList<float[]>> loops, ArrayList<float[]> loop, 
+			float lastX, float lastY, float startX, float startY) {
+		if (null == loop || loop.isEmpty()) return;
+		if (lastX != startX || lastY != startY) loop.add(new float[] {lastX, lastY, startX, startY});
+		loops.add(loop);
+	}
+
+	/**
+	 * @return   a closed Java2D path with the segments of a loop
+	 */
+	private static Path2D.Float toPath(ArrayList<float[]> loop) {
+		Path2D.Float path = new Path2D.Float(Path2D.WIND_EVEN_ODD, loop.size() + 2);
+		path.moveTo(loop.get(0)[0], loop.get(0)[1]);
+		for (float[] seg : loop) {
+			if (8 == seg.length) path.curveTo(seg[2], seg[3], seg[4], seg[5], seg[6], seg[7]);
+			else path.lineTo(seg[2], seg[3]);
+		}
+		path.closePath();
+		return path;
+	}
+
+	/**
+	 * @return   true if two rectangles overlap or touch
+	 */
+	private static boolean overlaps(Rectangle2D a, Rectangle2D b) {
+		return a.getMinX() <= b.getMaxX() && b.getMinX() <= a.getMaxX() && a.getMinY() <= b.getMaxY() && b.getMinY() <= a.getMaxY();
+	}
+
+	/**
+	 * Finds a point strictly inside a loop: the midpoint of one of its segments, moved a little way to the side
+	 * of the segment where the inside of the loop lies.
+	 * @param loop   a loop of segments
+	 * @param path   the loop as a closed path
+	 * @param area   signed area of the loop, which tells which side is inside
+	 * @return   array of 2 floats, x and y, the first vertex of the loop if no segment yields a point inside it
+	 */
+	private static float[] interiorPoint(ArrayList<float[]> loop, Path2D.Float path, float area) {
+		Rectangle2D box = path.getBounds2D();
+		double nudge = 1.0E-4 * Math.max(box.getWidth(), box.getHeight());
+		// the inside is to the left of a loop with positive signed area, to the right of one with negative area
+		if (area < 0) nudge = -nudge;
+		for (float[] seg : loop) {
+			double mx, my, dx, dy;
+			if (8 == seg.length) {
+				// point and direction at t = 0.5
+				mx = (seg[0] + 3 * seg[2] + 3 * seg[4] + seg[6]) / 8.0;
+				my = (seg[1] + 3 * seg[3] + 3 * seg[5] + seg[7]) / 8.0;
+				dx = seg[6] + seg[4] - seg[2] - seg[0];
+				dy = seg[7] + seg[5] - seg[3] - seg[1];
+			}
+			else {
+				mx = (seg[0] + seg[2]) / 2.0;
+				my = (seg[1] + seg[3]) / 2.0;
+				dx = seg[2] - seg[0];
+				dy = seg[3] - seg[1];
+			}
+			double len = Math.sqrt(dx * dx + dy * dy);
+			if (0 == len) continue;
+			float x = (float) (mx - nudge * dy / len);
+			float y = (float) (my + nudge * dx / len);
+			if (path.contains(x, y)) return new float[] {x, y};
+		}
+		float[] first = loop.get(0);
+		return new float[] {first[0], first[1]};
+	}
+
+	/**
+	 * @return   signed area of a flattened closed path, positive or negative depending on its direction
+	 */
+	private static float signedArea(Path2D.Float path) {
+		PathIterator it = path.getPathIterator(null, 0.5);
+		float[] c = new float[6];
+		double sum = 0;
+		float startX = 0, startY = 0, lastX = 0, lastY = 0;
+		while (!it.isDone()) {
+			int type = it.currentSegment(c);
+			if (PathIterator.SEG_MOVETO == type) {
+				startX = lastX = c[0];
+				startY = lastY = c[1];
+			}
+			else {
+				float x = (PathIterator.SEG_CLOSE == type) ? startX : c[0];
+				float y = (PathIterator.SEG_CLOSE == type) ? startY : c[1];
+				sum += (double) lastX * y - (double) x * lastY;
+				lastX = x;
+				lastY = y;
+			}
+			it.next();
+		}
+		return (float) (sum / 2);
+	}
+
+	/**
+	 * @return   the segments of a loop in reverse order, each running backwards
+	 */
+	private static ArrayList<float[]> reverse(ArrayList<float[]> loop) {
+		ArrayList<float[]> reversed = new ArrayList<float[]>(loop.size());
+		for (int k = loop.size() - 1; k >= 0; k--) {
+			float[] seg = loop.get(k);
+			if (8 == seg.length) reversed.add(new float[] {seg[6], seg[7], seg[4], seg[5], seg[2], seg[3], seg[0], seg[1]});
+			else reversed.add(new float[] {seg[2], seg[3], seg[0], seg[1]});
+		}
+		return reversed;
+	}
+
+	/**
+	 * @return   index of the segment of a loop whose end point is nearest to the start of another segment
+	 */
+	private static int nearestEnd(ArrayList<float[]> loop, float[] seg) {
+		int nearest = 0;
+		float best = Float.MAX_VALUE;
+		for (int k = 0; k < loop.size(); k++) {
+			float[] s = loop.get(k);
+			float dx = s[s.length - 2] - seg[0], dy = s[s.length - 1] - seg[1];
+			float d = dx * dx + dy * dy;
+			if (d < best) {
+				best = d;
+				nearest = k;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Appends a segment to a shape, as a curve or a line.
+	 */
+	private static void append(BezShape shape, float[] seg) {
+		if (8 == seg.length) shape.append(seg[2], seg[3], seg[4], seg[5], seg[6], seg[7]);
+		else shape.append(seg[2], seg[3]);
+	}
+
+}
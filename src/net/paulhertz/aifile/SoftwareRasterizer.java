@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+
+package net.paulhertz.aifile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders the shapes in a component tree into an {@code int[]} of ARGB pixels without a Processing renderer,
+ * for example to make thumbnails on a headless machine. Each visible {@link net.paulhertz.aifile.BezShape BezShape}
+ * is flattened to a polygon, filled with the even-odd rule in its {@code fillColor} and stroked in its
+ * {@code strokeColor} and {@code weight}, blending colors with their alpha over what was drawn before.
+ * Pixels are sampled at their centers, without antialiasing. Text and custom components are not drawn.
+ * <p>
+ * The image is divided into horizontal bands that are rasterized in parallel with {@link #setThreads(int)}.
+ * Shapes are flattened on the calling thread before rasterizing starts.
+ * </p>
+ */
+public class SoftwareRasterizer {
+	/** number of rows in each band of the image handed to a rendering thread */
+	public static final int BAND_HEIGHT = 32;
+	private int width;
+	private int height;
+	private int[] pixels;
+	/** background color */
+	private int background = 0xffffffff;
+	/** number of threads to render with */
+	private int threads = 1;
+	/** maximum distance in pixels between a curve and its polygon */
+	private float tolerance = 0.25f;
+
+
+	private SoftwareRasterizer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.pixels = new int[width * height];
+	}
+
+	/**
+	 * @param width    width of the image, in pixels
+	 * @param height   height of the image, in pixels
+	 * @return   a new SoftwareRasterizer
+	 */
+	public static SoftwareRasterizer makeSoftwareRasterizer(int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Image dimensions must be greater than 0.");
+		}
+		return new SoftwareRasterizer(width, height);
+	}
+
+
+	/**
+	 * @param argb   background color, a Processing color (32-bit int with ARGB bytes), use 0 for a transparent background
+	 */
+	public void setBackground(int argb) {
+		this.background = argb;
+	}
+
+	/**
+	 * @param threads   number of threads to render with, default is 1
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * @param tolerance   maximum distance in pixels between a curve and the polygon that stands in for it, default 0.25
+	 */
+	public void setTolerance(float tolerance) {
+		if (tolerance <= 0) {
+			throw new IllegalArgumentException("Tolerance must be greater than 0.");
+		}
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * @return   width of the image, in pixels
+	 */
+	public int width() {
+		return this.width;
+	}
+	/**
+	 * @return   height of the image, in pixels
+	 */
+	public int height() {
+		return this.height;
+	}
+	/**
+	 * @return   the pixels of the last image rendered, in rows from top to bottom, as ARGB ints
+	 */
+	public int[] pixels() {
+		return this.pixels;
+	}
+
+
+	/**
+	 * Renders a component scaled to fit the image, centered, keeping its proportions.
+	 * @param component   component to render, usually a DocumentComponent
+	 * @return   the pixels of the image
+	 */
+	public int[] render(DisplayComponent component) {
+		BezRectangle r = component.boundsRect();
+		if (null == r) {
+			Arrays.fill(this.pixels, this.background);
+			return this.pixels;
+		}
+		float w = Math.max(r.getWidth(), Float.MIN_NORMAL);
+		float h = Math.max(r.getHeight(), Float.MIN_NORMAL);
+		float scale = Math.min(this.width / w, this.height / h);
+		float dx = (this.width / scale - w) / 2;
+		float dy = (this.height / scale - h) / 2;
+		return this.render(component, r.getLeft() - dx, r.getTop() - dy, scale);
+	}
+
+	/**
+	 * Renders a region of a component, stretched to fill the image.
+	 * @param component   component to render, usually a DocumentComponent
+	 * @param region      region to render, in the component's coordinate system
+	 * @return   the pixels of the image
+	 */
+	public int[] render(DisplayComponent component, BezRectangle region) {
+		float sx = this.width / region.getWidth();
+		float sy = this.height / region.getHeight();
+		return this.render(component, region.getLeft(), region.getTop(), sx, sy);
+	}
+
+	/**
+	 * Renders a component at a given scale, with a given point at the upper left corner of the image.
+	 * @param component   component to render, usually a DocumentComponent
+	 * @param left        x-coordinate in the component's coordinate system at the left edge of the image
+	 * @param top         y-coordinate in the component's coordinate system at the top edge of the image
+	 * @param scale       pixels per unit of the component's coordinate system
+	 * @return   the pixels of the image
+	 */
+	public int[] render(DisplayComponent component, float left, float top, float scale) {
+		return this.render(component, left, top, scale, scale);
+	}
+
+
+	private int[] render(DisplayComponent component, float left, float top, float sx, float sy) {
+		ArrayList<Paint> paints = new ArrayList<Paint>();
+		this.collect(component, left, top, sx, sy, paints);
+		Arrays.fill(this.pixels, this.background);
+		int bands = (this.height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+		ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>(bands);
+		for (int band = 0; band < bands; band++) {
+			final int y0 = band * BAND_HEIGHT;
+			final int y1 = Math.min(this.height, y0 + BAND_HEIGHT);
+			tasks.add(() -> {
+				float[] crossings = new float[16];
+				for (Paint paint : paints) {
+					crossings = this.fill(paint, y0, y1, crossings);
+				}
+				return null;
+			});
+		}
+		if (1 == this.threads || 1 == bands) {
+			for (Callable<Object> task : tasks) {
+				try {
+					task.call();
+				}
+				catch (RuntimeException e) {
+					throw e;
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return this.pixels;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, bands));
+		try {
+			for (Future<Object> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while rasterizing.", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+		finally {
+			executor.shutdown();
+		}
+		return this.pixels;
+	}
+
+	/**
+	 * Flattens the visible shapes under a component into fills and strokes in pixel coordinates, in drawing order.
+	 */
+	private void collect(DisplayComponent comp, float left, float top, float sx, float sy, ArrayList<Paint> paints) {
+		if (!comp.isVisible()) return;
+		if (null != comp.children) {
+			for (DisplayComponent kid : comp.children()) {
+				this.collect(kid, left, top, sx, sy, paints);
+			}
+			return;
+		}
+		if (!(comp instanceof BezShape)) return;
+		BezShape shape = (BezShape) comp;
+		if (!shape.hasFill() && !shape.hasStroke()) return;
+		float[] pts = shape.asPolygon(this.tolerance / Math.max(sx, sy));
+		for (int i = 0; i < pts.length; i += 2) {
+			pts[i] = (pts[i] - left) * sx;
+			pts[i + 1] = (pts[i + 1] - top) * sy;
+		}
+		if (shape.hasFill() && pts.length >= 6) {
+			Paint fill = new Paint(shape.fillColor(), true);
+			fill.addPolygon(pts, true);
+			fill.close();
+			paints.add(fill);
+		}
+		if (shape.hasStroke()) {
+			float half = Math.max(1, shape.weight() * (sx + sy) / 2) / 2;
+			Paint stroke = new Paint(shape.strokeColor(), false);
+			int n = pts.length / 2;
+			int segs = shape.isClosed() ? n : n - 1;
+			for (int i = 0; i < segs; i++) {
+				int j = (i + 1) % n;
+				stroke.addSegment(pts[2 * i], pts[2 * i + 1], pts[2 * j], pts[2 * j + 1], half);
+			}
+			// fill the gaps at the joins with squares the width of the stroke
+			int first = shape.isClosed() ? 0 : 1;
+			int last = shape.isClosed() ? n : n - 1;
+			for (int i = first; i < last; i++) {
+				stroke.addSquare(pts[2 * i], pts[2 * i + 1], half);
+			}
+			stroke.close();
+			if (stroke.count > 0) paints.add(stroke);
+		}
+	}
+
+	/**
+	 * Rasterizes the rows of a fill or stroke between y0 (inclusive) and y1 (exclusive), sampling pixel centers.
+	 * @return   the crossings buffer, enlarged if necessary
+	 */
+	private float[] fill(Paint paint, int y0, int y1, float[] crossings) {
+		int rowStart = Math.max(y0, (int) Math.ceil(paint.top - 0.5f));
+		int rowEnd = Math.min(y1, (int) Math.ceil(paint.bottom - 0.5f));
+		long[] keyed = null;
+		for (int y = rowStart; y < rowEnd; y++) {
+			float cy = y + 0.5f;
+			int ct = 0;
+			float[] e = paint.edges;
+			for (int k = 0; k < paint.count; k++) {
+				int i = k * 5;
+				float ya = e[i + 1], yb = e[i + 3];
+				if (cy < ya || cy >= yb) continue;
+				if (ct == crossings.length) crossings = Arrays.copyOf(crossings, ct * 2);
+				crossings[ct++] = e[i] + (cy - ya) * (e[i + 2] - e[i]) / (yb - ya);
+			}
+			if (ct < 2) continue;
+			if (paint.isEvenOdd) {
+				Arrays.sort(crossings, 0, ct);
+				for (int k = 0; k + 1 < ct; k += 2) {
+					this.span(y, crossings[k], crossings[k + 1], paint.argb);
+				}
+				continue;
+			}
+			// nonzero winding: collect crossings with their direction, sort by x
+			if (null == keyed || keyed.length < ct) keyed = new long[Math.max(ct, 16)];
+			ct = 0;
+			for (int k = 0; k < paint.count; k++) {
+				int i = k * 5;
+				float ya = e[i + 1], yb = e[i + 3];
+				if (cy < ya || cy >= yb) continue;
+				float x = e[i] + (cy - ya) * (e[i + 2] - e[i]) / (yb - ya);
+				keyed[ct] = ((long) sortableBits(x) << 32) | (k & 0xffffffffL);
+				ct++;
+			}
+			Arrays.sort(keyed, 0, ct);
+			int winding = 0;
+			float spanStart = 0;
+			for (int k = 0; k < ct; k++) {
+				int edge = (int) keyed[k];
+				float x = Float.intBitsToFloat(unsortableBits((int) (keyed[k] >> 32)));
+				int before = winding;
+				winding += (int) e[edge * 5 + 4];
+				if (0 == before && 0 != winding) spanStart = x;
+				else if (0 != before && 0 == winding) this.span(y, spanStart, x, paint.argb);
+			}
+		}
+		return crossings;
+	}
+
+	/**
+	 * @return   the bits of a float, flipped so that they sort in the same order as the float, as signed ints
+	 */
+	private static int sortableBits(float f) {
+		int bits = Float.floatToIntBits(f);
+		return (bits < 0) ? bits ^ 0x7fffffff : bits;
+	}
+
+	/**
+	 * @return   the bits of a float from the result of {@link #sortableBits(float)}
+	 */
+	private static int unsortableBits(int bits) {
+		return (bits < 0) ? bits ^ 0x7fffffff : bits;
+	}
+
+	/**
+	 * Blends a color over the pixels of row y whose centers lie between xa and xb.
+	 */
+	private void span(int y, float xa, float xb, int argb) {
+		int start = Math.max(0, (int) Math.ceil(xa - 0.5f));
+		int end = Math.min(this.width, (int) Math.ceil(xb - 0.5f));
+		int alpha = argb >>> 24;
+		if (start >= end || 0 == alpha) return;
+		int row = y * this.width;
+		if (255 == alpha) {
+			Arrays.fill(this.pixels, row + start, row + end, argb);
+			return;
+		}
+		for (int x = start; x < end; x++) {
+			this.pixels[row + x] = blend(this.pixels[row + x], argb);
+		}
+	}
+
+	/**
+	 * Composites a source color over a destination color, both non-premultiplied ARGB.
+	 */
+	static int blend(int dst, int src) {
+		int sa = src >>> 24;
+		int da = dst >>> 24;
+		int oa = sa + da * (255 - sa) / 255;
+		if (0 == oa) return 0;
+		int dw = da * (255 - sa) / 255;
+		int r = (((src >> 16) & 0xff) * sa + ((dst >> 16) & 0xff) * dw) / oa;
+		int g = (((src >> 8) & 0xff) * sa + ((dst >> 8) & 0xff) * dw) / oa;
+		int b = ((src & 0xff) * sa + (dst & 0xff) * dw) / oa;
+		return (oa << 24) | (r << 16) | (g << 8) | b;
+	}
+
+
+	/**
+	 * A set of edges to fill with one color, in pixel coordinates. Each edge is stored as five floats:
+	 * x and y of its upper end, x and y of its lower end, and its direction, +1 or -1.
+	 */
+	private static class Paint {
+		final int argb;
+		/** true to fill with the even-odd rule, false for nonzero winding */
+		final boolean isEvenOdd;
+		float[] edges = new float[40];
+		int count = 0;
+		float top = Float.MAX_VALUE;
+		float bottom = -Float.MAX_VALUE;
+
+		Paint(int argb, boolean isEvenOdd) {
+			this.argb = argb;
+			this.isEvenOdd = isEvenOdd;
+		}
+
+		void addEdge(float xa, float ya, float xb, float yb) {
+			if (ya == yb) return;
+			int dir = 1;
+			if (ya > yb) {
+				float t = xa; xa = xb; xb = t;
+				t = ya; ya = yb; yb = t;
+				dir = -1;
+			}
+			if (count * 5 == edges.length) edges = Arrays.copyOf(edges, edges.length * 2);
+			int i = count * 5;
+			edges[i] = xa;
+			edges[i + 1] = ya;
+			edges[i + 2] = xb;
+			edges[i + 3] = yb;
+			edges[i + 4] = dir;
+			count++;
+			if (ya < top) top = ya;
+			if (yb > bottom) bottom = yb;
+		}
+
+		void addPolygon(float[] pts, boolean isClosed) {
+			int n = pts.length / 2;
+			for (int i = 0; i < n - 1; i++) {
+				addEdge(pts[2 * i], pts[2 * i + 1], pts[2 * i + 2], pts[2 * i + 3]);
+			}
+			if (isClosed) addEdge(pts[2 * n - 2], pts[2 * n - 1], pts[0], pts[1]);
+		}
+
+		/** adds a line of half width {@code half} as a rectangle with clockwise winding on screen */
+		void addSegment(float xa, float ya, float xb, float yb, float half) {
+			float dx = xb - xa, dy = yb - ya;
+			float len = (float) Math.sqrt(dx * dx + dy * dy);
+			if (0 == len) return;
+			float nx = -dy / len * half, ny = dx / len * half;
+			quad(xa + nx, ya + ny, xb + nx, yb + ny, xb - nx, yb - ny, xa - nx, ya - ny);
+		}
+
+		/** adds an axis-aligned square of half width {@code half} centered on (x, y) */
+		void addSquare(float x, float y, float half) {
+			quad(x - half, y - half, x + half, y - half, x + half, y + half, x - half, y + half);
+		}
+
+		/** adds a quadrilateral, reversing it if necessary so that all quads wind the same way */
+		private void quad(float x1, float y1, float x2, float y2, float x3, float y3, float x4, float y4) {
+			float area = (x2 - x1) * (y3 - y1) - (x3 - x1) * (y2 - y1);
+			if (area < 0) {
+				float t = x2; x2 = x4; x4 = t;
+				t = y2; y2 = y4; y4 = t;
+			}
+			addEdge(x1, y1, x2, y2);
+			addEdge(x2, y2, x3, y3);
+			addEdge(x3, y3, x4, y4);
+			addEdge(x4, y4, x1, y1);
+		}
+
+		/** trims the edge array */
+		void close() {
+			edges = Arrays.copyOf(edges, count * 5);
+		}
+	}
+
+}
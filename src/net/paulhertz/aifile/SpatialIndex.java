@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+
+package net.paulhertz.aifile;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A spatial index over the {@link net.paulhertz.aifile.BezShape BezShape} components in a
+ * {@link net.paulhertz.aifile.DocumentComponent DocumentComponent} or a {@link net.paulhertz.aifile.LayerComponent LayerComponent},
+ * for picking shapes under a point, finding shapes in a region and finding the shape nearest a point
+ * without scanning the whole component tree.
+ * <p>
+ * The index is a loose quadtree built from the cached {@link BezShape#boundsRect() boundsRect()} of each shape.
+ * Each node holds shapes whose centers fall inside it and whose bounds are no larger than the node,
+ * so a shape never has to be split across nodes. The tree grows to cover shapes added outside its current extent.
+ * </p><p>
+ * The index is kept up to date for you: its owner is notified when shapes are added, removed or transformed,
+ * and changed shapes are reindexed the next time the index is queried. Obtain an index from
+ * {@link DocumentComponent#spatialIndex()} or {@link LayerComponent#spatialIndex()} rather than constructing one.
+ * </p>
+ */
+public class SpatialIndex {
+	/** maximum number of shapes in a node before it is split */
+	public static final int MAX_NODE_ENTRIES = 16;
+	/** maximum depth of the tree */
+	public static final int MAX_DEPTH = 16;
+	/** component whose shapes are indexed */
+	private DisplayComponent owner;
+	/** root of the quadtree, null until the first shape is indexed */
+	private Node root;
+	/** index entry for each shape */
+	private IdentityHashMap<BezShape, Entry> entries = new IdentityHashMap<BezShape, Entry>();
+	/** components whose geometry has changed or that have been added since the last query */
+	private ArrayDeque<DisplayComponent> staleQueue = new ArrayDeque<DisplayComponent>();
+	private Set<DisplayComponent> staleSet = Collections.newSetFromMap(new IdentityHashMap<DisplayComponent, Boolean>());
+
+
+	/**
+	 * Creates an index over all shapes in the tree under {@code owner}. The index is filled at the first query.
+	 * @param owner   a DocumentComponent or LayerComponent
+	 */
+	SpatialIndex(DisplayComponent owner) {
+		this.owner = owner;
+		this.markStale(owner);
+	}
+
+
+	/**
+	 * @return   the component whose shapes are indexed
+	 */
+	public DisplayComponent owner() {
+		return this.owner;
+	}
+
+	/**
+	 * @return   the number of shapes in the index
+	 */
+	public int size() {
+		this.refresh();
+		return this.entries.size();
+	}
+
+
+	/*-------------------------------------------------------------------------------------------*/
+	/*                                                                                           */
+	/* QUERIES                                                                                   */
+	/*                                                                                           */
+	/*-------------------------------------------------------------------------------------------*/
+
+
+	/**
+	 * Returns all shapes whose geometry contains the point (x, y), tested with
+	 * {@link BezShape#containsPoint(float, float) containsPoint}.
+	 * Only shapes whose bounds contain the point are tested. Hidden shapes are included.
+	 * @param x   x-coordinate of point
+	 * @param y   y-coordinate of point
+	 * @return   an ArrayList of BezShapes containing the point, in no particular order, may be empty
+	 */
+	public ArrayList<BezShape> queryPoint(float x, float y) {
+		ArrayList<BezShape> result = new ArrayList<BezShape>();
+		for (BezShape shape : this.queryRect(x, y, x, y)) {
+			if (shape.containsPoint(x, y)) result.add(shape);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns all shapes whose bounding rectangles overlap the rectangle bounded by left, top, right and bottom.
+	 * @param left     left edge of query rectangle
+	 * @param top      top edge of query rectangle
+	 * @param right    right edge of query rectangle
+	 * @param bottom   bottom edge of query rectangle
+	 * @return   an ArrayList of BezShapes, in no particular order, may be empty
+	 */
+	public ArrayList<BezShape> queryRect(float left, float top, float right, float bottom) {
+		this.refresh();
+		ArrayList<BezShape> result = new ArrayList<BezShape>();
+		if (null == this.root) return result;
+		ArrayDeque<Node> nodes = new ArrayDeque<Node>();
+		nodes.push(this.root);
+		while (!nodes.isEmpty()) {
+			Node node = nodes.pop();
+			if (!node.looseOverlaps(left, top, right, bottom)) continue;
+			for (Entry e : node.entries) {
+				if (e.left <= right && e.right >= left && e.top <= bottom && e.bottom >= top) {
+					result.add(e.shape);
+				}
+			}
+			if (null != node.kids) {
+				for (Node kid : node.kids) {
+					if (null != kid) nodes.push(kid);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns all shapes whose bounding rectangles overlap the supplied rectangle.
+	 * @param r   a BezRectangle
+	 * @return   an ArrayList of BezShapes, in no particular order, may be empty
+	 */
+	public ArrayList<BezShape> queryRect(BezRectangle r) {
+		return this.queryRect(r.getLeft(), r.getTop(), r.getRight(), r.getBottom());
+	}
+
+	/**
+	 * Returns the shape whose bounding rectangle is nearest the point (x, y). Distance is zero for
+	 * any shape whose bounds contain the point, ties are broken arbitrarily.
+	 * @param x   x-coordinate of point
+	 * @param y   y-coordinate of point
+	 * @return   the nearest BezShape, or null if the index is empty
+	 */
+	public BezShape nearest(float x, float y) {
+		this.refresh();
+		if (null == this.root) return null;
+		// best-first search: nodes and entries are ordered by their minimum distance to (x, y)
+		PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+		queue.add(new Candidate(this.root, null, this.root.looseDistanceSq(x, y)));
+		while (!queue.isEmpty()) {
+			Candidate c = queue.poll();
+			if (null != c.entry) return c.entry.shape;
+			Node node = c.node;
+			for (Entry e : node.entries) {
+				queue.add(new Candidate(null, e, e.distanceSq(x, y)));
+			}
+			if (null != node.kids) {
+				for (Node kid : node.kids) {
+					if (null != kid) queue.add(new Candidate(kid, null, kid.looseDistanceSq(x, y)));
+				}
+			}
+		}
+		return null;
+	}
+
+
+	/*-------------------------------------------------------------------------------------------*/
+	/*                                                                                           */
+	/* MAINTENANCE, CALLED BY THE OWNER                                                          */
+	/*                                                                                           */
+	/*-------------------------------------------------------------------------------------------*/
+
+
+	/**
+	 * Flags a component for (re)indexing at the next query. If it is a composite, all its shapes are reindexed.
+	 * @param comp   a component that has been added or transformed
+	 */
+	synchronized void markStale(DisplayComponent comp) {
+		if (this.staleSet.add(comp)) this.staleQueue.add(comp);
+	}
+
+	/**
+	 * Removes a component and all shapes under it from the index.
+	 * @param comp   a component that has been removed from the owner's tree
+	 */
+	synchronized void removeAll(DisplayComponent comp) {
+		ArrayDeque<DisplayComponent> comps = new ArrayDeque<DisplayComponent>();
+		comps.push(comp);
+		while (!comps.isEmpty()) {
+			DisplayComponent c = comps.pop();
+			this.staleSet.remove(c);
+			if (c instanceof BezShape) {
+				this.remove((BezShape) c);
+			}
+			else if (null != c.children) {
+				for (DisplayComponent kid : c.children) comps.push(kid);
+			}
+		}
+	}
+
+	/**
+	 * Reindexes all stale components. The shapes under a stale composite are reindexed in turn.
+	 */
+	private synchronized void refresh() {
+		while (!this.staleQueue.isEmpty()) {
+			DisplayComponent comp = this.staleQueue.poll();
+			// skip components removed from the index since they were flagged
+			if (!this.staleSet.remove(comp)) continue;
+			if (comp instanceof BezShape) {
+				BezShape shape = (BezShape) comp;
+				this.remove(shape);
+				this.insert(shape);
+			}
+			else if (null != comp.children) {
+				// may flag children again, that's fine: we're about to queue them
+				for (DisplayComponent kid : comp.children) this.markStale(kid);
+			}
+		}
+	}
+
+	private void insert(BezShape shape) {
+		BezRectangle r = shape.boundsRect();
+		Entry e = new Entry(shape, r.getLeft(), r.getTop(), r.getRight(), r.getBottom());
+		this.entries.put(shape, e);
+		float ext = e.extent();
+		if (null == this.root) {
+			this.root = new Node(e.xctr(), e.yctr(), Math.max(ext, 1.0f));
+		}
+		// grow the root towards the entry until the entry fits
+		while (!this.root.contains(e.xctr(), e.yctr()) || ext > this.root.half) {
+			Node old = this.root;
+			float sx = (e.xctr() < old.cx) ? -1 : 1;
+			float sy = (e.yctr() < old.cy) ? -1 : 1;
+			this.root = new Node(old.cx + sx * old.half, old.cy + sy * old.half, old.half * 2);
+			this.root.kids = new Node[4];
+			this.root.kids[this.root.quadrant(old.cx, old.cy)] = old;
+		}
+		Node node = this.root;
+		int depth = 0;
+		while (true) {
+			float kidHalf = node.half / 2;
+			if (null == node.kids) {
+				if (node.entries.size() < MAX_NODE_ENTRIES || depth >= MAX_DEPTH) break;
+				this.split(node);
+			}
+			if (ext > kidHalf) break;
+			int q = node.quadrant(e.xctr(), e.yctr());
+			if (null == node.kids[q]) node.kids[q] = node.makeKid(q);
+			node = node.kids[q];
+			depth++;
+		}
+		node.entries.add(e);
+		e.node = node;
+	}
+
+	private void split(Node node) {
+		node.kids = new Node[4];
+		float kidHalf = node.half / 2;
+		ArrayList<Entry> keep = new ArrayList<Entry>();
+		for (Entry e : node.entries) {
+			if (e.extent() > kidHalf) {
+				keep.add(e);
+				continue;
+			}
+			int q = node.quadrant(e.xctr(), e.yctr());
+			if (null == node.kids[q]) node.kids[q] = node.makeKid(q);
+			node.kids[q].entries.add(e);
+			e.node = node.kids[q];
+		}
+		node.entries = keep;
+	}
+
+	private void remove(BezShape shape) {
+		Entry e = this.entries.remove(shape);
+		if (null != e) e.node.entries.remove(e);
+	}
+
+
+	/**
+	 * A shape and the bounds it was indexed with.
+	 */
+	private static class Entry {
+		BezShape shape;
+		float left, top, right, bottom;
+		Node node;
+
+		Entry(BezShape shape, float left, float top, float right, float bottom) {
+			this.shape = shape;
+			this.left = left;
+			this.top = top;
+			this.right = right;
+			this.bottom = bottom;
+		}
+		float xctr() { return (left + right) / 2; }
+		float yctr() { return (top + bottom) / 2; }
+		/** half of the larger dimension of the bounds */
+		float extent() { return Math.max(right - left, bottom - top) / 2; }
+		float distanceSq(float x, float y) {
+			float dx = Math.max(0, Math.max(left - x, x - right));
+			float dy = Math.max(0, Math.max(top - y, y - bottom));
+			return dx * dx + dy * dy;
+		}
+	}
+
+	/**
+	 * A square quadtree node. Its loose bounds, which contain all its shapes, are twice its size.
+	 */
+	private static class Node {
+		float cx, cy, half;
+		ArrayList<Entry> entries = new ArrayList<Entry>();
+		Node[] kids;
+
+		Node(float cx, float cy, float half) {
+			this.cx = cx;
+			this.cy = cy;
+			this.half = half;
+		}
+		boolean contains(float x, float y) {
+			return x >= cx - half && x <= cx + half && y >= cy - half && y <= cy + half;
+		}
+		int quadrant(float x, float y) {
+			return (x < cx ? 0 : 1) + (y < cy ? 0 : 2);
+		}
+		Node makeKid(int q) {
+			float h = half / 2;
+			return new Node(cx + ((q & 1) == 0 ? -h : h), cy + ((q & 2) == 0 ? -h : h), h);
+		}
+		boolean looseOverlaps(float left, float top, float right, float bottom) {
+			float lh = 2 * half;
+			return cx - lh <= right && cx + lh >= left && cy - lh <= bottom && cy + lh >= top;
+		}
+		float looseDistanceSq(float x, float y) {
+			float lh = 2 * half;
+			float dx = Math.max(0, Math.abs(x - cx) - lh);
+			float dy = Math.max(0, Math.abs(y - cy) - lh);
+			return dx * dx + dy * dy;
+		}
+	}
+
+	/**
+	 * A node or an entry waiting in the nearest neighbor search queue.
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+		Node node;
+		Entry entry;
+		float distanceSq;
+
+		Candidate(Node node, Entry entry, float distanceSq) {
+			this.node = node;
+			this.entry = entry;
+			this.distanceSq = distanceSq;
+		}
+		public int compareTo(Candidate c) {
+			return Float.compare(this.distanceSq, c.distanceSq);
+		}
+	}
+
+}
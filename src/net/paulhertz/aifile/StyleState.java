@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+
+package net.paulhertz.aifile;
+
+import java.util.Comparator;
+
+import processing.core.PGraphics;
+
+/**
+ * Tracks the fill, stroke and stroke weight last sent to a renderer during a batched draw, so that
+ * consecutive shapes with the same style don't repeat {@code fill()}, {@code stroke()} and {@code strokeWeight()} calls.
+ * Used internally by components whose batched style mode is turned on, see {@link DisplayComponent#setBatchedStyle(boolean)}.
+ */
+class StyleState {
+	/** false until a style has been sent, or after something else may have changed the renderer's style */
+	private boolean isKnown = false;
+	private boolean hasFill;
+	private int fillColor;
+	private boolean hasStroke;
+	private int strokeColor;
+	private float weight;
+
+	/** orders shapes by fill, then stroke, then weight, to group shapes that share a style */
+	static final Comparator<BezShape> styleOrder = new Comparator<BezShape>() {
+		public int compare(BezShape a, BezShape b) {
+			if (a.hasFill() != b.hasFill()) return a.hasFill() ? 1 : -1;
+			if (a.hasFill() && a.fillColor() != b.fillColor()) return Integer.compare(a.fillColor(), b.fillColor());
+			if (a.hasStroke() != b.hasStroke()) return a.hasStroke() ? 1 : -1;
+			if (a.hasStroke() && a.strokeColor() != b.strokeColor()) return Integer.compare(a.strokeColor(), b.strokeColor());
+			return Float.compare(a.weight(), b.weight());
+		}
+	};
+
+
+	/**
+	 * Sends the style of a shape to the renderer, skipping calls that would not change its state.
+	 * @param g       the PGraphics being drawn to
+	 * @param shape   the shape about to be drawn
+	 */
+	void apply(PGraphics g, BezShape shape) {
+		boolean shapeHasFill = shape.hasFill();
+		if (!isKnown || shapeHasFill != hasFill || (shapeHasFill && shape.fillColor() != fillColor)) {
+			if (shapeHasFill) {
+				g.fill(shape.fillColor());
+			}
+			else {
+				g.noFill();
+			}
+			hasFill = shapeHasFill;
+			fillColor = shape.fillColor();
+		}
+		boolean shapeHasStroke = shape.hasStroke();
+		if (!isKnown || shapeHasStroke != hasStroke || (shapeHasStroke && shape.strokeColor() != strokeColor)) {
+			if (shapeHasStroke) {
+				g.stroke(shape.strokeColor());
+			}
+			else {
+				g.noStroke();
+			}
+			hasStroke = shapeHasStroke;
+			strokeColor = shape.strokeColor();
+		}
+		if (!isKnown || shape.weight() != weight) {
+			g.strokeWeight(shape.weight());
+			weight = shape.weight();
+		}
+		isKnown = true;
+	}
+
+	/**
+	 * Forgets the tracked style, so that the next shape sends its full style. Call after drawing
+	 * anything that sets the renderer's style on its own.
+	 */
+	void reset() {
+		isKnown = false;
+	}
+
+}
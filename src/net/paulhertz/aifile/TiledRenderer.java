@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+
+package net.paulhertz.aifile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/**
+ * Renders a component, typically a {@link net.paulhertz.aifile.DocumentComponent DocumentComponent}, to image files
+ * at a resolution too large to fit in a single PGraphics. The region to render is divided into tiles, each tile is
+ * drawn with bounds culling into a reusable offscreen buffer and saved to disk before the next one is drawn,
+ * so memory use depends on the tile size, not the size of the whole image.
+ * <p>
+ * {@link #renderTiles(String)} saves one file per tile, {@link #renderStrips(String)} saves full-width strips
+ * of tile height, which are easy to stitch together. Tiles can be rendered on several threads, each with its
+ * own buffer, with {@link #setThreads(int)}. Parallel rendering requires a renderer that can draw from
+ * any thread, such as the default JAVA2D renderer, and components in plain drawing mode (not retained or batched).
+ * </p>
+ */
+public class TiledRenderer {
+	/** PApplet used to create offscreen buffers */
+	private PApplet parent;
+	/** component to render */
+	private DisplayComponent component;
+	/** pixels per unit of the component's coordinate system */
+	private float scale;
+	private int tileWidth;
+	private int tileHeight;
+	/** region to render, in the component's coordinate system, null for the bounds of the component */
+	private BezRectangle region;
+	/** background color, ignored if isTransparent is true */
+	private int background = 0xffffffff;
+	private boolean isTransparent = false;
+	/** draw shapes smaller than a pixel as points */
+	private boolean isCullingSubPixel = true;
+	/** level of detail settings, null to draw shapes of a pixel or more in full */
+	private LevelOfDetail levelOfDetail = null;
+	/** number of threads to render with */
+	private int threads = 1;
+	/** offscreen buffer for each rendering thread */
+	private ThreadLocal<PGraphics> buffers;
+	/** every buffer created during a render, disposed of when the render ends */
+	private List<PGraphics> createdBuffers;
+
+
+	private TiledRenderer(PApplet parent, DisplayComponent component, float scale, int tileWidth, int tileHeight) {
+		this.parent = parent;
+		this.component = component;
+		this.scale = scale;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+	}
+
+	/**
+	 * @param parent       PApplet used to create offscreen buffers
+	 * @param component    component to render, usually a DocumentComponent
+	 * @param scale        pixels per unit of the component's coordinate system: 1 renders at screen size
+	 * @param tileWidth    width of each tile, in pixels
+	 * @param tileHeight   height of each tile, in pixels
+	 * @return   a new TiledRenderer
+	 */
+	public static TiledRenderer makeTiledRenderer(PApplet parent, DisplayComponent component, float scale,
+			int tileWidth, int tileHeight) {
+		if (tileWidth < 1 || tileHeight < 1 || scale <= 0) {
+			throw new IllegalArgumentException("Tile dimensions and scale must be greater than 0.");
+		}
+		return new TiledRenderer(parent, component, scale, tileWidth, tileHeight);
+	}
+
+
+	/**
+	 * Sets the region to render. By default, the bounds of the component are rendered.
+	 * @param region   a BezRectangle in the component's coordinate system, or null for the bounds of the component
+	 */
+	public void setRegion(BezRectangle region) {
+		this.region = region;
+	}
+	/**
+	 * @return   the region that will be rendered, in the component's coordinate system, or null if the component is empty
+	 */
+	public BezRectangle region() {
+		return (null == this.region) ? this.component.boundsRect() : this.region;
+	}
+
+	/**
+	 * @param argb   background color for tiles, a Processing color (32-bit int with ARGB bytes)
+	 */
+	public void setBackground(int argb) {
+		this.background = argb;
+		this.isTransparent = false;
+	}
+	/**
+	 * Renders tiles with a transparent background. Save them in a format that supports transparency, such as PNG.
+	 */
+	public void setTransparent() {
+		this.isTransparent = true;
+	}
+
+	/**
+	 * @param isCullingSubPixel   true (the default) to draw shapes smaller than a pixel as points, false to draw them in full
+	 */
+	public void setCullSubPixel(boolean isCullingSubPixel) {
+		this.isCullingSubPixel = isCullingSubPixel;
+	}
+
+	/**
+	 * Turns on level of detail drawing: shapes smaller than a few pixels are drawn as rectangles and curves 
+	 * as polylines, see {@link LevelOfDetail}. Off by default. Shapes smaller than a pixel are drawn as points 
+	 * whenever level of detail is on, whatever the setting of {@link #setCullSubPixel(boolean)}.
+	 * @param lod   level of detail settings, or null (the default) to draw shapes in full
+	 */
+	public void setLevelOfDetail(LevelOfDetail lod) {
+		this.levelOfDetail = lod;
+	}
+
+	/**
+	 * @param threads   number of threads to render tiles with, default is 1
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * @return   width of the rendered image, in pixels
+	 */
+	public int pixelWidth() {
+		BezRectangle r = this.region();
+		return (null == r) ? 0 : (int) Math.ceil(r.getWidth() * this.scale);
+	}
+	/**
+	 * @return   height of the rendered image, in pixels
+	 */
+	public int pixelHeight() {
+		BezRectangle r = this.region();
+		return (null == r) ? 0 : (int) Math.ceil(r.getHeight() * this.scale);
+	}
+	/**
+	 * @return   number of columns of tiles
+	 */
+	public int columns() {
+		return (this.pixelWidth() + this.tileWidth - 1) / this.tileWidth;
+	}
+	/**
+	 * @return   number of rows of tiles
+	 */
+	public int rows() {
+		return (this.pixelHeight() + this.tileHeight - 1) / this.tileHeight;
+	}
+
+
+	/**
+	 * Renders the region and saves each tile to its own file. Tiles at the right and bottom edges are cropped
+	 * to the image. The file format follows the extension, as in {@code PImage.save()}.
+	 * @param filePattern   a pattern for {@code String.format()} that takes the row and column of a tile,
+	 *                      for example {@code "tiles/tile_%03d_%03d.png"}
+	 */
+	public void renderTiles(String filePattern) {
+		this.render(this.tileWidth, this.tileHeight, this.columns(), false, filePattern);
+	}
+
+	/**
+	 * Renders the region and saves each row of tiles as a full-width strip. The strip at the bottom edge
+	 * is cropped to the image. Only one strip per rendering thread is held in memory at a time.
+	 * @param filePattern   a pattern for {@code String.format()} that takes the row of a strip,
+	 *                      for example {@code "strips/strip_%03d.png"}
+	 */
+	public void renderStrips(String filePattern) {
+		this.render(this.pixelWidth(), this.tileHeight, 1, true, filePattern);
+	}
+
+
+	private void render(final int w, final int h, final int cols, final boolean isStrips, final String filePattern) {
+		final BezRectangle r = this.region();
+		if (null == r) return;
+		final int width = this.pixelWidth();
+		final int height = this.pixelHeight();
+		final int rows = (height + h - 1) / h;
+		// calculate cached bounds, which applies pending transforms, on this thread before drawing
+		this.component.boundsRect();
+		ArrayList<Callable<Object>> tiles = new ArrayList<Callable<Object>>(rows * cols);
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				final int tileRow = row;
+				final int tileCol = col;
+				tiles.add(() -> {
+					int tw = Math.min(w, width - tileCol * w);
+					int th = Math.min(h, height - tileRow * h);
+					PImage img = this.renderTile(r, tileCol * w, tileRow * h, w, h);
+					if (tw < w || th < h) img = img.get(0, 0, tw, th);
+					img.save(isStrips ? String.format(filePattern, tileRow) : String.format(filePattern, tileRow, tileCol));
+					return null;
+				});
+			}
+		}
+		this.buffers = new ThreadLocal<PGraphics>();
+		this.createdBuffers = Collections.synchronizedList(new ArrayList<PGraphics>());
+		try {
+			this.runTiles(tiles);
+		}
+		finally {
+			// the calling thread outlives the render: drop its buffer along with those of the pool's threads
+			this.buffers.remove();
+			for (PGraphics pg : this.createdBuffers) pg.dispose();
+			this.buffers = null;
+			this.createdBuffers = null;
+		}
+	}
+
+	/**
+	 * Runs the tile tasks on the calling thread, or on a pool of {@code threads} threads.
+	 */
+	private void runTiles(ArrayList<Callable<Object>> tiles) {
+		if (1 == this.threads) {
+			try {
+				for (Callable<Object> tile : tiles) tile.call();
+			}
+			catch (RuntimeException e) {
+				throw e;
+			}
+			catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		try {
+			for (Future<Object> future : executor.invokeAll(tiles)) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while rendering tiles.", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Draws one tile into the calling thread's buffer.
+	 * @param r    the region being rendered
+	 * @param px   left edge of the tile, in pixels from the left of the image
+	 * @param py   top edge of the tile, in pixels from the top of the image
+	 * @param w    width of the buffer
+	 * @param h    height of the buffer
+	 * @return   the buffer, holding the tile
+	 */
+	private PGraphics renderTile(BezRectangle r, int px, int py, int w, int h) {
+		PGraphics pg = this.buffers.get();
+		if (null == pg || pg.width != w || pg.height != h) {
+			if (null != pg) {
+				pg.dispose();
+				this.createdBuffers.remove(pg);
+			}
+			pg = this.parent.createGraphics(w, h);
+			this.createdBuffers.add(pg);
+			this.buffers.set(pg);
+		}
+		float x0 = r.getLeft() + px / this.scale;
+		float y0 = r.getTop() + py / this.scale;
+		BezRectangle viewport = BezRectangle.makeLeftTopRightBottom(this.parent, x0, y0, x0 + w / this.scale, y0 + h / this.scale);
+		pg.beginDraw();
+		if (this.isTransparent) {
+			pg.clear();
+		}
+		else {
+			pg.background(this.background);
+		}
+		pg.pushMatrix();
+		pg.scale(this.scale);
+		pg.translate(-x0, -y0);
+		float pixelSize = (this.isCullingSubPixel || null != this.levelOfDetail) ? 1 / this.scale : 0;
+		this.component.draw(pg, viewport, pixelSize, this.levelOfDetail);
+		pg.popMatrix();
+		pg.endDraw();
+		return pg;
+	}
+
+}
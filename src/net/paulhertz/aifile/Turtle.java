@@ -22,6 +22,8 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Iterator;
 
+import net.paulhertz.geom.PathSimplifier;
+
 import processing.core.PApplet;
 import processing.core.PGraphics;
 import processing.core.PVector;
@@ -336,6 +338,23 @@ public class Turtle implements ColorableINF {
 		this.trailIndex = -1;
 	}
 	
+	/**
+	 * Thins out the points of all trails, both those saved in turtleTrails and the current trail,
+	 * which often hold long runs of nearly collinear points. 
+	 * @see net.paulhertz.aifile.BezShape#simplify(PathSimplifier.Method, float)
+	 * @param method      point-thinning method
+	 * @param tolerance   distance below which points are dropped
+	 * @return   number of points removed
+	 */
+	public int simplifyTrails(PathSimplifier.Method method, float tolerance) {
+		int removed = 0;
+		for (BezShape bez : this.turtleTrails) {
+			removed += bez.simplify(method, tolerance);
+		}
+		if (null != this.trail) removed += this.trail.simplify(method, tolerance);
+		return removed;
+	}
+	
 	/**
 	 * Draws all trails, both those saved in turtleTrails and the current trail, to the display.
 	 * If the turtle is visible, draws the turtle icon.
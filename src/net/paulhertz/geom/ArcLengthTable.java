@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+package net.paulhertz.geom;
+
+import java.util.Arrays;
+
+/**
+ * Parameterizes a polyline by distance along it. The cumulative length at each vertex is stored once,
+ * so finding the point or direction at a given distance is a binary search, O(log n) in the number of vertices.
+ * Distances along a closed polyline wrap around, distances along an open one are clamped to its ends.
+ */
+public class ArcLengthTable {
+	/** alternating x and y coordinates, for a closed polyline ending with a copy of the first point */
+	private final float[] points;
+	/** cumulative length at each point, starting at 0 */
+	private final float[] lengths;
+	private final boolean isClosed;
+
+
+	private ArcLengthTable(float[] points, float[] lengths, boolean isClosed) {
+		this.points = points;
+		this.lengths = lengths;
+		this.isClosed = isClosed;
+	}
+
+	/**
+	 * @param polyline   array of alternating x and y coordinates, with at least one point
+	 * @param isClosed   true if the polyline returns from its last point to its first
+	 * @return   a new ArcLengthTable
+	 */
+	public static ArcLengthTable makeArcLengthTable(float[] polyline, boolean isClosed) {
+		if (polyline.length < 2) {
+			throw new IllegalArgumentException("A polyline needs at least one point.");
+		}
+		int n = polyline.length / 2;
+		boolean isOpenAtEnd = polyline[0] != polyline[2 * n - 2] || polyline[1] != polyline[2 * n - 1];
+		float[] points = (isClosed && isOpenAtEnd) ? Arrays.copyOf(polyline, 2 * n + 2) : Arrays.copyOf(polyline, 2 * n);
+		if (points.length > 2 * n) {
+			points[2 * n] = polyline[0];
+			points[2 * n + 1] = polyline[1];
+			n++;
+		}
+		float[] lengths = new float[n];
+		double sum = 0;
+		for (int i = 1; i < n; i++) {
+			double dx = points[2 * i] - points[2 * i - 2];
+			double dy = points[2 * i + 1] - points[2 * i - 1];
+			sum += Math.sqrt(dx * dx + dy * dy);
+			lengths[i] = (float) sum;
+		}
+		return new ArcLengthTable(points, lengths, isClosed);
+	}
+
+
+	/**
+	 * @return   total length of the polyline
+	 */
+	public float length() {
+		return this.lengths[this.lengths.length - 1];
+	}
+
+	/**
+	 * Wraps or clamps a distance into the range from 0 to the length of the polyline.
+	 */
+	private float normalize(float distance) {
+		float len = this.length();
+		if (this.isClosed && len > 0) {
+			distance %= len;
+			if (distance < 0) distance += len;
+			return distance;
+		}
+		return (distance < 0) ? 0 : (distance > len) ? len : distance;
+	}
+
+	/**
+	 * @return   index of the segment that contains the distance, the index of its first point
+	 */
+	private int segment(float distance) {
+		int k = Arrays.binarySearch(this.lengths, distance);
+		if (k < 0) k = -k - 2;
+		// never start a segment at the last point
+		int last = this.lengths.length - 2;
+		if (k > last) k = last;
+		if (k < 0) k = 0;
+		return k;
+	}
+
+	/**
+	 * @param distance   distance along the polyline from its first point
+	 * @return   array of two floats, the x and y coordinates of the point at that distance
+	 */
+	public float[] pointAt(float distance) {
+		if (1 == this.lengths.length) {
+			return new float[] {this.points[0], this.points[1]};
+		}
+		distance = this.normalize(distance);
+		int k = this.segment(distance);
+		float segLength = this.lengths[k + 1] - this.lengths[k];
+		float t = (segLength > 0) ? (distance - this.lengths[k]) / segLength : 0;
+		float[] out = new float[2];
+		out[0] = GeomUtils.lerp(t, this.points[2 * k], this.points[2 * k + 2]);
+		out[1] = GeomUtils.lerp(t, this.points[2 * k + 1], this.points[2 * k + 3]);
+		return out;
+	}
+
+	/**
+	 * @param distance   distance along the polyline from its first point
+	 * @return   array of two floats, the x and y components of the unit direction of the polyline at that distance,
+	 *           or (0, 0) if the polyline has no length
+	 */
+	public float[] tangentAt(float distance) {
+		float[] out = new float[2];
+		if (1 == this.lengths.length || 0 == this.length()) return out;
+		int k = this.segment(this.normalize(distance));
+		// find a segment with some length, looking forward and then back
+		int j = k;
+		while (j < this.lengths.length - 2 && this.lengths[j + 1] == this.lengths[j]) j++;
+		while (j > 0 && this.lengths[j + 1] == this.lengths[j]) j--;
+		float dx = this.points[2 * j + 2] - this.points[2 * j];
+		float dy = this.points[2 * j + 3] - this.points[2 * j + 1];
+		float len = (float) Math.sqrt(dx * dx + dy * dy);
+		out[0] = dx / len;
+		out[1] = dy / len;
+		return out;
+	}
+
+	/**
+	 * Returns points evenly spaced by distance along the polyline, in one pass. An open polyline is sampled from its first
+	 * point to its last, inclusive; a closed one from its first point around, without repeating the first point at the end.
+	 * @param count   number of points
+	 * @return   array of alternating x and y coordinates of the points
+	 */
+	public float[] sampleEvenly(int count) {
+		float[] out = new float[2 * Math.max(0, count)];
+		if (count < 1) return out;
+		float len = this.length();
+		float step = this.isClosed ? len / count : (count > 1 ? len / (count - 1) : 0);
+		int k = 0;
+		int last = this.lengths.length - 2;
+		for (int i = 0; i < count; i++) {
+			float d = (this.isClosed || i < count - 1) ? i * step : len;
+			if (last < 0) {
+				out[2 * i] = this.points[0];
+				out[2 * i + 1] = this.points[1];
+				continue;
+			}
+			while (k < last && this.lengths[k + 1] < d) k++;
+			float segLength = this.lengths[k + 1] - this.lengths[k];
+			float t = (segLength > 0) ? Math.min(1, (d - this.lengths[k]) / segLength) : 0;
+			out[2 * i] = GeomUtils.lerp(t, this.points[2 * k], this.points[2 * k + 2]);
+			out[2 * i + 1] = GeomUtils.lerp(t, this.points[2 * k + 1], this.points[2 * k + 3]);
+		}
+		return out;
+	}
+
+}
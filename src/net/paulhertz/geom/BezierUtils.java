@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+package net.paulhertz.geom;
+
+import java.util.Arrays;
+
+/**
+ * Provides static methods for evaluating and flattening cubic Bezier curves, without a PApplet.
+ * A cubic curve is given by its start point (x0, y0), control points (cx1, cy1) and (cx2, cy2),
+ * and end point (x1, y1), the same order Processing and {@code BezShape} use.
+ */
+public class BezierUtils {
+	/** maximum number of times a curve is halved while flattening, limits a curve to 2^16 lines */
+	public static final int MAX_DEPTH = 16;
+	/** number of times a curve is halved while finding where it crosses a value */
+	public static final int ROOT_DEPTH = 24;
+
+	private BezierUtils() {
+
+	}
+
+	/**
+	 * Evaluates one coordinate of a cubic Bezier curve, like {@code PApplet.bezierPoint}.
+	 * @param a   coordinate of the start point
+	 * @param b   coordinate of the first control point
+	 * @param c   coordinate of the second control point
+	 * @param d   coordinate of the end point
+	 * @param t   parameter, from 0 to 1
+	 * @return    coordinate of the curve at t
+	 */
+	public static float bezierPoint(float a, float b, float c, float d, float t) {
+		float mt = 1 - t;
+		return mt * mt * mt * a + 3 * mt * mt * t * b + 3 * mt * t * t * c + t * t * t * d;
+	}
+
+	/**
+	 * Evaluates one coordinate of the derivative of a cubic Bezier curve, like {@code PApplet.bezierTangent}.
+	 * @param a   coordinate of the start point
+	 * @param b   coordinate of the first control point
+	 * @param c   coordinate of the second control point
+	 * @param d   coordinate of the end point
+	 * @param t   parameter, from 0 to 1
+	 * @return    derivative of the coordinate at t
+	 */
+	public static float bezierTangent(float a, float b, float c, float d, float t) {
+		float mt = 1 - t;
+		return 3 * (mt * mt * (b - a) + 2 * mt * t * (c - b) + t * t * (d - c));
+	}
+
+	/**
+	 * Samples a cubic Bezier curve at {@code steps} equal steps in t by forward differencing, which takes
+	 * only additions per point, and writes the points after the start point into an array. Differences are 
+	 * accumulated in double precision and the last point is set to the end point, so round-off does not build up. 
+	 * @param steps    number of straight line segments to divide the curve into, nothing is written if less than 1
+	 * @param out      array to write x and y coordinates into, with room for {@code 2 * steps} floats after {@code offset}
+	 * @param offset   index in {@code out} of the first x-coordinate to write
+	 * @return   the index in {@code out} following the last coordinate written
+	 */
+	public static int forwardDifference(float x0, float y0, float cx1, float cy1, float cx2, float cy2, float x1, float y1,
+			int steps, float[] out, int offset) {
+		if (steps < 1) return offset;
+		double h = 1.0 / steps;
+		double h2 = h * h;
+		double h3 = h2 * h;
+		// polynomial coefficients: B(t) = a t^3 + b t^2 + c t + start
+		double ax = -x0 + 3 * (cx1 - cx2) + x1, ay = -y0 + 3 * (cy1 - cy2) + y1;
+		double bx = 3 * (x0 - 2 * cx1 + cx2), by = 3 * (y0 - 2 * cy1 + cy2);
+		double cx = 3 * (cx1 - x0), cy = 3 * (cy1 - y0);
+		// first, second and third differences at t = 0
+		double dx = ax * h3 + bx * h2 + cx * h, dy = ay * h3 + by * h2 + cy * h;
+		double ddx = 6 * ax * h3 + 2 * bx * h2, ddy = 6 * ay * h3 + 2 * by * h2;
+		double dddx = 6 * ax * h3, dddy = 6 * ay * h3;
+		double px = x0, py = y0;
+		for (int j = 1; j < steps; j++) {
+			px += dx;
+			py += dy;
+			dx += ddx;
+			dy += ddy;
+			ddx += dddx;
+			ddy += dddy;
+			out[offset++] = (float) px;
+			out[offset++] = (float) py;
+		}
+		out[offset++] = x1;
+		out[offset++] = y1;
+		return offset;
+	}
+
+	/**
+	 * Returns the exact bounding box of a cubic Bezier curve, found from its end points and from the points 
+	 * where the derivative of x or y is zero, without flattening the curve.
+	 * @return   array of float: left, top, right, bottom coordinates
+	 */
+	public static float[] cubicBounds(float x0, float y0, float cx1, float cy1, float cx2, float cy2, float x1, float y1) {
+		float[] bounds = new float[4];
+		cubicRange(x0, cx1, cx2, x1, bounds, 0);
+		cubicRange(y0, cy1, cy2, y1, bounds, 1);
+		return bounds;
+	}
+
+	/**
+	 * Finds the minimum and maximum of one coordinate of a cubic Bezier curve over t in [0, 1]
+	 * and stores them in {@code bounds[index]} and {@code bounds[index + 2]}.
+	 */
+	private static void cubicRange(float p0, float p1, float p2, float p3, float[] bounds, int index) {
+		float min = Math.min(p0, p3);
+		float max = Math.max(p0, p3);
+		// the curve can only leave the range of its end points if a control point does
+		if (p1 < min || p1 > max || p2 < min || p2 > max) {
+			// derivative divided by 3: a t^2 + b t + c
+			double a = -p0 + 3 * (p1 - p2) + p3;
+			double b = 2 * (p0 - 2 * p1 + p2);
+			double c = p1 - p0;
+			double t1 = -1, t2 = -1;
+			if (Math.abs(a) < 1e-12) {
+				if (Math.abs(b) > 1e-12) t1 = -c / b;
+			}
+			else {
+				double disc = b * b - 4 * a * c;
+				if (disc >= 0) {
+					double sq = Math.sqrt(disc);
+					t1 = (-b + sq) / (2 * a);
+					t2 = (-b - sq) / (2 * a);
+				}
+			}
+			if (t1 > 0 && t1 < 1) {
+				float v = bezierPoint(p0, p1, p2, p3, (float) t1);
+				if (v < min) min = v;
+				if (v > max) max = v;
+			}
+			if (t2 > 0 && t2 < 1) {
+				float v = bezierPoint(p0, p1, p2, p3, (float) t2);
+				if (v < min) min = v;
+				if (v > max) max = v;
+			}
+		}
+		bounds[index] = min;
+		bounds[index + 2] = max;
+	}
+
+	/**
+	 * Tests if a cubic Bezier curve is within {@code tolerance} of the straight line from its start point to its end point,
+	 * comparing points at equal parameter values, which also catches curves that double back on themselves.
+	 * @return   true if the line can stand in for the curve
+	 */
+	public static boolean isFlat(float x0, float y0, float cx1, float cy1, float cx2, float cy2, float x1, float y1, float tolerance) {
+		// the distance at any t is at most sqrt(ux + uy) / 4 (Roger Willcocks)
+		float ux = 3 * cx1 - 2 * x0 - x1;
+		float uy = 3 * cy1 - 2 * y0 - y1;
+		float vx = 3 * cx2 - x0 - 2 * x1;
+		float vy = 3 * cy2 - y0 - 2 * y1;
+		ux *= ux;
+		uy *= uy;
+		vx *= vx;
+		vy *= vy;
+		if (ux < vx) ux = vx;
+		if (uy < vy) uy = vy;
+		return ux + uy <= 16 * tolerance * tolerance;
+	}
+
+	/**
+	 * Flattens a cubic Bezier curve into straight lines no farther than {@code tolerance} from the curve,
+	 * halving the curve until each piece is flat. Flat parts of the curve get few points, tight bends many.
+	 * @param tolerance   maximum distance between the curve and its lines, greater than 0
+	 * @return   x and y coordinates of the points after the start point, ending with the end point
+	 */
+	public static float[] flattenCubic(float x0, float y0, float cx1, float cy1, float cx2, float cy2, float x1, float y1, float tolerance) {
+		if (tolerance <= 0) {
+			throw new IllegalArgumentException("Tolerance must be greater than 0.");
+		}
+		Points out = new Points();
+		flattenCubic(x0, y0, cx1, cy1, cx2, cy2, x1, y1, tolerance, MAX_DEPTH, out);
+		return Arrays.copyOf(out.coords, out.count);
+	}
+
+	private static void flattenCubic(float x0, float y0, float cx1, float cy1, float cx2, float cy2, float x1, float y1,
+			float tolerance, int depth, Points out) {
+		if (0 == depth || isFlat(x0, y0, cx1, cy1, cx2, cy2, x1, y1, tolerance)) {
+			out.add(x1, y1);
+			return;
+		}
+		// split at t = 0.5 with de Casteljau's algorithm
+		float ax = (x0 + cx1) / 2, ay = (y0 + cy1) / 2;
+		float bx = (cx1 + cx2) / 2, by = (cy1 + cy2) / 2;
+		float cx = (cx2 + x1) / 2, cy = (cy2 + y1) / 2;
+		float abx = (ax + bx) / 2, aby = (ay + by) / 2;
+		float bcx = (bx + cx) / 2, bcy = (by + cy) / 2;
+		float mx = (abx + bcx) / 2, my = (aby + bcy) / 2;
+		flattenCubic(x0, y0, ax, ay, abx, aby, mx, my, tolerance, depth - 1, out);
+		flattenCubic(mx, my, bcx, bcy, cx, cy, x1, y1, tolerance, depth - 1, out);
+	}
+
+	/**
+	 * Finds the parameter values strictly between 0 and 1 at which one coordinate of a cubic Bezier curve crosses
+	 * a given value, for example where a curve crosses a vertical or horizontal line. The curve is halved with
+	 * de Casteljau's algorithm, dropping every piece whose control values all lie on one side of the value, until
+	 * pieces are shorter than 2^-{@value #ROOT_DEPTH} in t. No polynomial is solved, so nearly degenerate curves
+	 * give no trouble. Points where the curve only touches the value are not reported.
+	 * @param a       coordinate of the start point
+	 * @param b       coordinate of the first control point
+	 * @param c       coordinate of the second control point
+	 * @param d       coordinate of the end point
+	 * @param value   the value to cross
+	 * @param out     array with room for 3 parameter values
+	 * @return   number of parameter values written to {@code out}, in increasing order
+	 */
+	public static int cubicCrossings(float a, float b, float c, float d, float value, float[] out) {
+		return cubicCrossings(a - value, b - value, c - value, d - value, 0, 1, ROOT_DEPTH, out, 0);
+	}
+
+	private static int cubicCrossings(double a, double b, double c, double d, double t0, double t1, int depth, float[] out, int count) {
+		if (count >= 3) return count;
+		// by the convex hull property, no crossing if all control values are on one side
+		if ((a > 0 && b > 0 && c > 0 && d > 0) || (a < 0 && b < 0 && c < 0 && d < 0)) return count;
+		// a piece lying on the value does not cross it
+		if (0 == a && 0 == b && 0 == c && 0 == d) return count;
+		if (0 == depth) {
+			if ((a > 0 && d > 0) || (a < 0 && d < 0)) return count;
+			float t = (float) ((a == d) ? (t0 + t1) / 2 : t0 + (t1 - t0) * a / (a - d));
+			if (t <= 0 || t >= 1) return count;
+			// a crossing at the end of one piece may also be found at the start of the next
+			if (count > 0 && t - out[count - 1] < 1.0e-6f) return count;
+			out[count++] = t;
+			return count;
+		}
+		double ab = (a + b) / 2, bc = (b + c) / 2, cd = (c + d) / 2;
+		double abc = (ab + bc) / 2, bcd = (bc + cd) / 2;
+		double m = (abc + bcd) / 2;
+		double tm = (t0 + t1) / 2;
+		count = cubicCrossings(a, ab, abc, m, t0, tm, depth - 1, out, count);
+		return cubicCrossings(m, bcd, cd, d, tm, t1, depth - 1, out, count);
+	}
+
+	/**
+	 * Extracts the part of a cubic Bezier curve between two parameter values, which is itself a cubic Bezier curve.
+	 * The control points come from the blossom of the curve, so the part can be taken in one step
+	 * rather than by splitting the curve twice.
+	 * @param curve   array of 8 floats: x0, y0, cx1, cy1, cx2, cy2, x1, y1
+	 * @param t0      parameter of the start of the part
+	 * @param t1      parameter of the end of the part
+	 * @param out     array of 8 floats to write the part to, in the same order, not the same array as {@code curve}
+	 */
+	public static void subCurve(float[] curve, float t0, float t1, float[] out) {
+		for (int i = 0; i < 2; i++) {
+			float p0 = curve[i], p1 = curve[i + 2], p2 = curve[i + 4], p3 = curve[i + 6];
+			out[i] = blossom(p0, p1, p2, p3, t0, t0, t0);
+			out[i + 2] = blossom(p0, p1, p2, p3, t0, t0, t1);
+			out[i + 4] = blossom(p0, p1, p2, p3, t0, t1, t1);
+			out[i + 6] = blossom(p0, p1, p2, p3, t1, t1, t1);
+		}
+	}
+
+	/**
+	 * @return   the blossom of one coordinate of a cubic Bezier curve at (u, v, w), de Casteljau's algorithm
+	 *           with a different parameter at each level
+	 */
+	private static float blossom(float p0, float p1, float p2, float p3, float u, float v, float w) {
+		double a = p0 + (p1 - p0) * (double) u;
+		double b = p1 + (p2 - p1) * (double) u;
+		double c = p2 + (p3 - p2) * (double) u;
+		double d = a + (b - a) * v;
+		double e = b + (c - b) * v;
+		return (float) (d + (e - d) * w);
+	}
+
+
+	/**
+	 * A growable array of x and y coordinates.
+	 */
+	private static class Points {
+		float[] coords = new float[16];
+		int count = 0;
+
+		void add(float x, float y) {
+			if (count + 2 > coords.length) coords = Arrays.copyOf(coords, coords.length * 2);
+			coords[count++] = x;
+			coords[count++] = y;
+		}
+	}
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+package net.paulhertz.geom;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Fits cubic Bezier curves to a polyline by least squares, after Philip J. Schneider, "An Algorithm for Automatically
+ * Fitting Digitized Curves", Graphics Gems, 1990. The polyline is first cut at corners, points where it turns more
+ * than a given angle. Each piece is fitted with one curve, parameterized by chord length and improved by Newton-Raphson
+ * reparameterization; if the curve misses a point by more than the tolerance, the piece is split at that point with
+ * a shared tangent, so the curves join smoothly, and the halves are fitted in turn.
+ * <p>
+ * Results are arrays of curve segments, six floats each: the two control points and the end point of the curve,
+ * the order {@code BezVertex} uses. The first segment starts at the first point of the polyline.
+ * </p>
+ */
+public class CurveFitter {
+	/** default angle, in radians, at which the direction of a polyline must change for a point to count as a corner */
+	public static final float DEFAULT_CORNER_ANGLE = (float) (Math.PI / 3);
+	/** number of times to reparameterize a fit that is close to the tolerance before splitting it */
+	private static final int MAX_ITERATIONS = 4;
+
+
+	private CurveFitter() {
+
+	}
+
+
+	/**
+	 * Fits curves to a polyline, finding corners with the {@link #DEFAULT_CORNER_ANGLE default corner angle}.
+	 * @param points      array of alternating x and y coordinates, at least two points
+	 * @param tolerance   maximum distance between a point of the polyline and the curves
+	 * @return   array of curve segments, six floats each: cx1, cy1, cx2, cy2, x, y
+	 */
+	public static float[] fitCurves(float[] points, float tolerance) {
+		return fitCurves(points, tolerance, DEFAULT_CORNER_ANGLE);
+	}
+
+	/**
+	 * Fits curves to a polyline.
+	 * @param points        array of alternating x and y coordinates, at least two points
+	 * @param tolerance     maximum distance between a point of the polyline and the curves
+	 * @param cornerAngle   change of direction, in radians, above which a point is a corner where curves may meet at an angle
+	 * @return   array of curve segments, six floats each: cx1, cy1, cx2, cy2, x, y
+	 */
+	public static float[] fitCurves(float[] points, float tolerance, float cornerAngle) {
+		float[] pts = dropDuplicates(points);
+		int n = pts.length / 2;
+		if (n < 2) {
+			throw new IllegalArgumentException("Curve fitting needs at least two distinct points.");
+		}
+		Output out = new Output();
+		float cosCorner = (float) Math.cos(cornerAngle);
+		int first = 0;
+		for (int i = 1; i < n; i++) {
+			if (i < n - 1 && !isCorner(pts, i, cosCorner)) continue;
+			fitPiece(pts, first, i, tolerance * tolerance, out);
+			first = i;
+		}
+		return Arrays.copyOf(out.coords, out.count);
+	}
+
+	/**
+	 * @return   true if the polyline turns through more than the corner angle at point i
+	 */
+	private static boolean isCorner(float[] pts, int i, float cosCorner) {
+		float ax = pts[2 * i] - pts[2 * i - 2], ay = pts[2 * i + 1] - pts[2 * i - 1];
+		float bx = pts[2 * i + 2] - pts[2 * i], by = pts[2 * i + 3] - pts[2 * i + 1];
+		float dot = ax * bx + ay * by;
+		float len = (float) Math.sqrt((ax * ax + ay * ay) * (bx * bx + by * by));
+		return dot < cosCorner * len;
+	}
+
+	/**
+	 * Fits the points from first to last, inclusive, with as many curves as it takes, splitting with an explicit stack.
+	 */
+	private static void fitPiece(float[] pts, int first, int last, float error2, Output out) {
+		ArrayDeque<float[]> stack = new ArrayDeque<float[]>();
+		// each entry: first, last, left tangent x and y, right tangent x and y
+		float[] t1 = unit(pts[2 * first + 2] - pts[2 * first], pts[2 * first + 3] - pts[2 * first + 1]);
+		float[] t2 = unit(pts[2 * last - 2] - pts[2 * last], pts[2 * last - 1] - pts[2 * last + 1]);
+		stack.push(new float[] {first, last, t1[0], t1[1], t2[0], t2[1]});
+		float[] u = new float[last - first + 1];
+		float[] bez = new float[8];
+		while (!stack.isEmpty()) {
+			float[] job = stack.pop();
+			int f = (int) job[0], l = (int) job[1];
+			float tx1 = job[2], ty1 = job[3], tx2 = job[4], ty2 = job[5];
+			if (1 == l - f) {
+				// two points: place control points a third of the way along the tangents
+				float dist = distance(pts, f, l) / 3;
+				out.add(pts[2 * f] + tx1 * dist, pts[2 * f + 1] + ty1 * dist, pts[2 * l] + tx2 * dist, pts[2 * l + 1] + ty2 * dist, pts[2 * l], pts[2 * l + 1]);
+				continue;
+			}
+			chordLengthParameterize(pts, f, l, u);
+			generateBezier(pts, f, l, u, tx1, ty1, tx2, ty2, bez);
+			int[] split = new int[1];
+			float maxError = maxError(pts, f, l, bez, u, split);
+			if (maxError >= error2 && maxError < error2 * 4) {
+				for (int k = 0; k < MAX_ITERATIONS && maxError >= error2; k++) {
+					reparameterize(pts, f, l, u, bez);
+					generateBezier(pts, f, l, u, tx1, ty1, tx2, ty2, bez);
+					maxError = maxError(pts, f, l, bez, u, split);
+				}
+			}
+			if (maxError < error2) {
+				out.add(bez[2], bez[3], bez[4], bez[5], bez[6], bez[7]);
+				continue;
+			}
+			// split at the point of greatest error, with a tangent shared by both sides
+			int s = split[0];
+			float[] tc = unit(pts[2 * s - 2] - pts[2 * s + 2], pts[2 * s - 1] - pts[2 * s + 3]);
+			if (0 == tc[0] && 0 == tc[1]) tc = unit(pts[2 * s - 2] - pts[2 * s], pts[2 * s - 1] - pts[2 * s + 1]);
+			// push the right half first, so that the left half is fitted and output first
+			stack.push(new float[] {s, l, -tc[0], -tc[1], tx2, ty2});
+			stack.push(new float[] {f, s, tx1, ty1, tc[0], tc[1]});
+		}
+	}
+
+	/**
+	 * Finds the control points of the curve from point f to point l with the given end tangents that best fits
+	 * the points at parameters u, by least squares, and stores the curve in bez as four points.
+	 */
+	private static void generateBezier(float[] pts, int f, int l, float[] u, float tx1, float ty1, float tx2, float ty2, float[] bez) {
+		double c00 = 0, c01 = 0, c11 = 0, x0 = 0, x1 = 0;
+		float p0x = pts[2 * f], p0y = pts[2 * f + 1], p3x = pts[2 * l], p3y = pts[2 * l + 1];
+		for (int i = f; i <= l; i++) {
+			double t = u[i - f], mt = 1 - t;
+			double b0 = mt * mt * mt, b1 = 3 * t * mt * mt, b2 = 3 * t * t * mt, b3 = t * t * t;
+			double a1x = tx1 * b1, a1y = ty1 * b1;
+			double a2x = tx2 * b2, a2y = ty2 * b2;
+			c00 += a1x * a1x + a1y * a1y;
+			c01 += a1x * a2x + a1y * a2y;
+			c11 += a2x * a2x + a2y * a2y;
+			double dx = pts[2 * i] - (p0x * (b0 + b1) + p3x * (b2 + b3));
+			double dy = pts[2 * i + 1] - (p0y * (b0 + b1) + p3y * (b2 + b3));
+			x0 += a1x * dx + a1y * dy;
+			x1 += a2x * dx + a2y * dy;
+		}
+		double det = c00 * c11 - c01 * c01;
+		double alpha1 = 0, alpha2 = 0;
+		if (Math.abs(det) > 1e-12) {
+			alpha1 = (x0 * c11 - x1 * c01) / det;
+			alpha2 = (c00 * x1 - c01 * x0) / det;
+		}
+		double segLength = Math.sqrt((p3x - p0x) * (p3x - p0x) + (p3y - p0y) * (p3y - p0y));
+		double epsilon = 1e-6 * segLength;
+		if (alpha1 < epsilon || alpha2 < epsilon) {
+			// fall back on the heuristic of Wu and Barsky
+			alpha1 = alpha2 = segLength / 3;
+		}
+		bez[0] = p0x;
+		bez[1] = p0y;
+		bez[2] = (float) (p0x + tx1 * alpha1);
+		bez[3] = (float) (p0y + ty1 * alpha1);
+		bez[4] = (float) (p3x + tx2 * alpha2);
+		bez[5] = (float) (p3y + ty2 * alpha2);
+		bez[6] = p3x;
+		bez[7] = p3y;
+	}
+
+	/**
+	 * @return   greatest squared distance between a point and the curve at its parameter, with its index in split[0]
+	 */
+	private static float maxError(float[] pts, int f, int l, float[] bez, float[] u, int[] split) {
+		float maxDist = 0;
+		split[0] = (f + l + 1) / 2;
+		for (int i = f + 1; i < l; i++) {
+			float t = u[i - f];
+			float dx = BezierUtils.bezierPoint(bez[0], bez[2], bez[4], bez[6], t) - pts[2 * i];
+			float dy = BezierUtils.bezierPoint(bez[1], bez[3], bez[5], bez[7], t) - pts[2 * i + 1];
+			float d = dx * dx + dy * dy;
+			if (d >= maxDist) {
+				maxDist = d;
+				split[0] = i;
+			}
+		}
+		return maxDist;
+	}
+
+	/**
+	 * Improves each parameter with one Newton-Raphson step toward the nearest point on the curve.
+	 */
+	private static void reparameterize(float[] pts, int f, int l, float[] u, float[] bez) {
+		for (int i = f; i <= l; i++) {
+			float t = u[i - f];
+			float px = pts[2 * i], py = pts[2 * i + 1];
+			float qx = BezierUtils.bezierPoint(bez[0], bez[2], bez[4], bez[6], t) - px;
+			float qy = BezierUtils.bezierPoint(bez[1], bez[3], bez[5], bez[7], t) - py;
+			float q1x = BezierUtils.bezierTangent(bez[0], bez[2], bez[4], bez[6], t);
+			float q1y = BezierUtils.bezierTangent(bez[1], bez[3], bez[5], bez[7], t);
+			// second derivative
+			float mt = 1 - t;
+			float q2x = 6 * (mt * (bez[4] - 2 * bez[2] + bez[0]) + t * (bez[6] - 2 * bez[4] + bez[2]));
+			float q2y = 6 * (mt * (bez[5] - 2 * bez[3] + bez[1]) + t * (bez[7] - 2 * bez[5] + bez[3]));
+			float numerator = qx * q1x + qy * q1y;
+			float denominator = q1x * q1x + q1y * q1y + qx * q2x + qy * q2y;
+			if (0 != denominator) {
+				t -= numerator / denominator;
+				u[i - f] = (t < 0) ? 0 : (t > 1) ? 1 : t;
+			}
+		}
+	}
+
+	/**
+	 * Sets u to the cumulative chord length at each point from f to l, scaled to run from 0 to 1.
+	 */
+	private static void chordLengthParameterize(float[] pts, int f, int l, float[] u) {
+		u[0] = 0;
+		for (int i = f + 1; i <= l; i++) {
+			u[i - f] = u[i - f - 1] + distance(pts, i - 1, i);
+		}
+		float total = u[l - f];
+		for (int i = 1; i <= l - f; i++) {
+			u[i] /= total;
+		}
+	}
+
+	private static float distance(float[] pts, int i, int j) {
+		float dx = pts[2 * j] - pts[2 * i], dy = pts[2 * j + 1] - pts[2 * i + 1];
+		return (float) Math.sqrt(dx * dx + dy * dy);
+	}
+
+	private static float[] unit(float x, float y) {
+		float len = (float) Math.sqrt(x * x + y * y);
+		return (0 == len) ? new float[] {0, 0} : new float[] {x / len, y / len};
+	}
+
+	/**
+	 * @return   the points with consecutive duplicates removed
+	 */
+	private static float[] dropDuplicates(float[] points) {
+		float[] result = new float[points.length - points.length % 2];
+		int count = 0;
+		for (int i = 0; i + 1 < points.length; i += 2) {
+			if (count > 0 && points[i] == result[count - 2] && points[i + 1] == result[count - 1]) continue;
+			result[count++] = points[i];
+			result[count++] = points[i + 1];
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+
+	/**
+	 * A growable array of curve segments.
+	 */
+	private static class Output {
+		float[] coords = new float[48];
+		int count = 0;
+
+		void add(float cx1, float cy1, float cx2, float cy2, float x, float y) {
+			if (count + 6 > coords.length) coords = Arrays.copyOf(coords, coords.length * 2);
+			coords[count++] = cx1;
+			coords[count++] = cy1;
+			coords[count++] = cx2;
+			coords[count++] = cy2;
+			coords[count++] = x;
+			coords[count++] = y;
+		}
+	}
+
+}
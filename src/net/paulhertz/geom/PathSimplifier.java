@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+package net.paulhertz.geom;
+
+import java.util.Arrays;
+
+/**
+ * Provides static methods for point-thinning: removing points from a polyline that add little to its shape.
+ * Polylines are arrays of alternating x and y coordinates. The first and last points are always kept.
+ * All three methods run without recursion and allocate only a few arrays the size of the input.
+ * <ul>
+ * <li>{@link Method#RADIAL_DISTANCE RADIAL_DISTANCE} drops points closer than {@code tolerance} to the last point kept.
+ * Fastest, good as a first pass over dense input such as turtle trails.</li>
+ * <li>{@link Method#DOUGLAS_PEUCKER DOUGLAS_PEUCKER} (Ramer-Douglas-Peucker) keeps the points needed so that
+ * no dropped point is farther than {@code tolerance} from the result.</li>
+ * <li>{@link Method#VISVALINGAM_WHYATT VISVALINGAM_WHYATT} repeatedly drops the point that forms the smallest triangle
+ * with its neighbors, until every triangle has an area of at least {@code tolerance} squared. It tends to keep
+ * the character of a line better than Douglas-Peucker at strong simplification.</li>
+ * </ul>
+ */
+public class PathSimplifier {
+	/**
+	 * Point-thinning methods.
+	 */
+	public enum Method {
+		RADIAL_DISTANCE, DOUGLAS_PEUCKER, VISVALINGAM_WHYATT;
+	}
+
+
+	private PathSimplifier() {
+
+	}
+
+
+	/**
+	 * Simplifies a polyline with the method of your choice.
+	 * @param points      array of alternating x and y coordinates
+	 * @param method      point-thinning method
+	 * @param tolerance   distance below which points are dropped, see the methods for details
+	 * @return   a new array with the points that were kept, or {@code points} itself if no point was dropped
+	 */
+	public static float[] simplify(float[] points, Method method, float tolerance) {
+		switch (method) {
+		case RADIAL_DISTANCE:
+			return radialDistance(points, tolerance);
+		case DOUGLAS_PEUCKER:
+			return douglasPeucker(points, tolerance);
+		case VISVALINGAM_WHYATT:
+			return visvalingamWhyatt(points, tolerance);
+		default:
+			throw new IllegalArgumentException("Unknown simplification method " + method);
+		}
+	}
+
+	/**
+	 * Drops points closer than {@code tolerance} to the previous point kept.
+	 * @param points      array of alternating x and y coordinates
+	 * @param tolerance   minimum distance between points
+	 * @return   a new array with the points that were kept, or {@code points} itself if no point was dropped
+	 */
+	public static float[] radialDistance(float[] points, float tolerance) {
+		int n = points.length / 2;
+		if (n < 3) return points;
+		float tol2 = tolerance * tolerance;
+		boolean[] keep = new boolean[n];
+		keep[0] = true;
+		keep[n - 1] = true;
+		float px = points[0], py = points[1];
+		for (int i = 1; i < n - 1; i++) {
+			float dx = points[2 * i] - px, dy = points[2 * i + 1] - py;
+			if (dx * dx + dy * dy >= tol2) {
+				keep[i] = true;
+				px = points[2 * i];
+				py = points[2 * i + 1];
+			}
+		}
+		return kept(points, keep);
+	}
+
+	/**
+	 * Ramer-Douglas-Peucker simplification, with an explicit stack in place of recursion.
+	 * @param points      array of alternating x and y coordinates
+	 * @param tolerance   maximum distance between a dropped point and the simplified polyline
+	 * @return   a new array with the points that were kept, or {@code points} itself if no point was dropped
+	 */
+	public static float[] douglasPeucker(float[] points, float tolerance) {
+		int n = points.length / 2;
+		if (n < 3) return points;
+		float tol2 = tolerance * tolerance;
+		boolean[] keep = new boolean[n];
+		keep[0] = true;
+		keep[n - 1] = true;
+		// pairs of first and last index of ranges still to examine
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = n - 1;
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+			float ax = points[2 * first], ay = points[2 * first + 1];
+			float bx = points[2 * last], by = points[2 * last + 1];
+			float maxDist = -1;
+			int index = -1;
+			for (int i = first + 1; i < last; i++) {
+				float d = segmentDistanceSquared(points[2 * i], points[2 * i + 1], ax, ay, bx, by);
+				if (d > maxDist) {
+					maxDist = d;
+					index = i;
+				}
+			}
+			if (index < 0 || maxDist <= tol2) continue;
+			keep[index] = true;
+			if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+			if (index - first > 1) {
+				stack[top++] = first;
+				stack[top++] = index;
+			}
+			if (last - index > 1) {
+				stack[top++] = index;
+				stack[top++] = last;
+			}
+		}
+		return kept(points, keep);
+	}
+
+	/**
+	 * Visvalingam-Whyatt simplification, with a binary heap of triangle areas.
+	 * @param points      array of alternating x and y coordinates
+	 * @param tolerance   points are dropped while the smallest triangle a point forms with its neighbors
+	 *                    has an area less than {@code tolerance * tolerance}
+	 * @return   a new array with the points that were kept, or {@code points} itself if no point was dropped
+	 */
+	public static float[] visvalingamWhyatt(float[] points, float tolerance) {
+		int n = points.length / 2;
+		if (n < 3) return points;
+		float minArea = tolerance * tolerance;
+		int[] prev = new int[n];
+		int[] next = new int[n];
+		float[] area = new float[n];
+		// heap of interior point indices ordered by area, and the position of each point in the heap
+		int[] heap = new int[n - 2];
+		int[] pos = new int[n];
+		int size = 0;
+		for (int i = 0; i < n; i++) {
+			prev[i] = i - 1;
+			next[i] = i + 1;
+		}
+		for (int i = 1; i < n - 1; i++) {
+			area[i] = triangleArea(points, i - 1, i, i + 1);
+			heap[size] = i;
+			pos[i] = size++;
+		}
+		for (int k = size / 2 - 1; k >= 0; k--) siftDown(heap, pos, area, k, size);
+		boolean[] keep = new boolean[n];
+		Arrays.fill(keep, true);
+		while (size > 0) {
+			int i = heap[0];
+			float a = area[i];
+			if (a >= minArea) break;
+			// remove the point with the smallest area
+			heap[0] = heap[--size];
+			pos[heap[0]] = 0;
+			siftDown(heap, pos, area, 0, size);
+			keep[i] = false;
+			int p = prev[i], q = next[i];
+			next[p] = q;
+			prev[q] = p;
+			// neighbors get new triangles, never smaller than the one just removed
+			if (p > 0) updateArea(points, prev, next, area, heap, pos, size, p, a);
+			if (q < n - 1) updateArea(points, prev, next, area, heap, pos, size, q, a);
+		}
+		return kept(points, keep);
+	}
+
+	private static void updateArea(float[] points, int[] prev, int[] next, float[] area, int[] heap, int[] pos, int size, int i, float floor) {
+		float old = area[i];
+		area[i] = Math.max(floor, triangleArea(points, prev[i], i, next[i]));
+		if (area[i] < old) siftUp(heap, pos, area, pos[i]);
+		else siftDown(heap, pos, area, pos[i], size);
+	}
+
+	private static void siftUp(int[] heap, int[] pos, float[] area, int k) {
+		int i = heap[k];
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			int p = heap[parent];
+			if (area[p] <= area[i]) break;
+			heap[k] = p;
+			pos[p] = k;
+			k = parent;
+		}
+		heap[k] = i;
+		pos[i] = k;
+	}
+
+	private static void siftDown(int[] heap, int[] pos, float[] area, int k, int size) {
+		if (k >= size) return;
+		int i = heap[k];
+		while (true) {
+			int child = 2 * k + 1;
+			if (child >= size) break;
+			if (child + 1 < size && area[heap[child + 1]] < area[heap[child]]) child++;
+			int c = heap[child];
+			if (area[i] <= area[c]) break;
+			heap[k] = c;
+			pos[c] = k;
+			k = child;
+		}
+		heap[k] = i;
+		pos[i] = k;
+	}
+
+	/**
+	 * @return   area of the triangle formed by points a, b and c
+	 */
+	private static float triangleArea(float[] points, int a, int b, int c) {
+		float ax = points[2 * a], ay = points[2 * a + 1];
+		return Math.abs((points[2 * b] - ax) * (points[2 * c + 1] - ay) - (points[2 * c] - ax) * (points[2 * b + 1] - ay)) / 2;
+	}
+
+	/**
+	 * @return   squared distance from (px, py) to the line segment from (ax, ay) to (bx, by)
+	 */
+	private static float segmentDistanceSquared(float px, float py, float ax, float ay, float bx, float by) {
+		float dx = bx - ax, dy = by - ay;
+		float len2 = dx * dx + dy * dy;
+		float t = (len2 > 0) ? ((px - ax) * dx + (py - ay) * dy) / len2 : 0;
+		if (t < 0) t = 0;
+		else if (t > 1) t = 1;
+		float ex = ax + t * dx - px, ey = ay + t * dy - py;
+		return ex * ex + ey * ey;
+	}
+
+	/**
+	 * @return   the points flagged in {@code keep}, or {@code points} if all of them are
+	 */
+	private static float[] kept(float[] points, boolean[] keep) {
+		int count = 0;
+		for (boolean k : keep) {
+			if (k) count++;
+		}
+		if (count == keep.length) return points;
+		float[] result = new float[2 * count];
+		int j = 0;
+		for (int i = 0; i < keep.length; i++) {
+			if (keep[i]) {
+				result[j++] = points[2 * i];
+				result[j++] = points[2 * i + 1];
+			}
+		}
+		return result;
+	}
+
+}
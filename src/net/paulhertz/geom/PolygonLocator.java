@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+package net.paulhertz.geom;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * Answers point-in-polygon queries for one polygon faster than {@link GeomUtils#pointInPoly(int, float[], float[], float, float)}
+ * when the same polygon is tested many times. The vertical extent of the polygon is divided into horizontal bands,
+ * each with a table of the edges that cross it, so a query only looks at the edges in the band of its point,
+ * after a bounding box test. The number of bands is chosen so that the table holds a few entries per edge: 
+ * a polygon whose edges mostly run the height of the polygon, such as a starburst, gets few bands and is 
+ * tested much as {@code pointInPoly} would test it. Answers are the same as those of {@code pointInPoly}, with the even-odd rule.
+ * The coordinate arrays are copied, so later changes to them are not seen.
+ * <p>
+ * To test many points at once, {@link #contains(float[])} sorts them by y and sweeps down the polygon once,
+ * computing the edge crossings of each distinct y only once, which suits points on a grid or scanlines.
+ * </p>
+ */
+public class PolygonLocator {
+	/** number of points with the same y above which a batch test sorts edge crossings rather than testing points one by one */
+	public static final int SHARED_ROW_THRESHOLD = 4;
+	/** number of query points below which a batch test is not split across threads */
+	public static final int PARALLEL_THRESHOLD = 1 << 14;
+	/** largest number of bands in the edge table */
+	public static final int MAX_BANDS = 4096;
+	/** 
+	 * number of band crossings per edge, on average, that the edge table allows: polygons with many long edges 
+	 * get fewer bands, so that the table stays within a few entries per edge 
+	 */
+	public static final int BAND_CROSSINGS_PER_EDGE = 3;
+	private final float[] xp;
+	private final float[] yp;
+	private final int npol;
+	private final float left, top, right, bottom;
+	/** number of bands and height of each */
+	private final int bands;
+	private final float bandHeight;
+	/** edges in band b are edgeIndex[bandStart[b]] up to edgeIndex[bandStart[b + 1]], each the index of its second vertex */
+	private final int[] bandStart;
+	private final int[] edgeIndex;
+
+
+	private PolygonLocator(float[] xp, float[] yp, int npol) {
+		this.npol = npol;
+		this.xp = new float[npol];
+		this.yp = new float[npol];
+		System.arraycopy(xp, 0, this.xp, 0, npol);
+		System.arraycopy(yp, 0, this.yp, 0, npol);
+		float l = Float.MAX_VALUE, t = Float.MAX_VALUE, r = -Float.MAX_VALUE, b = -Float.MAX_VALUE;
+		for (int i = 0; i < npol; i++) {
+			if (xp[i] < l) l = xp[i];
+			if (xp[i] > r) r = xp[i];
+			if (yp[i] < t) t = yp[i];
+			if (yp[i] > b) b = yp[i];
+		}
+		this.left = l;
+		this.top = t;
+		this.right = r;
+		this.bottom = b;
+		// an edge of height h is copied into about h / bandHeight bands: limit the total from the sum of edge heights
+		double heights = 0;
+		for (int i = 0, j = npol - 1; i < npol; j = i++) {
+			heights += Math.abs(yp[i] - yp[j]);
+		}
+		int maxBands = (int) Math.min(MAX_BANDS, BAND_CROSSINGS_PER_EDGE * (double) npol * (b - t) / Math.max(heights, Float.MIN_VALUE));
+		this.bands = (0 == npol || b <= t) ? 1 : Math.max(1, Math.min(maxBands, npol / 2));
+		this.bandHeight = (b > t) ? (b - t) / this.bands : 1;
+		// count the edges in each band, then fill the table
+		this.bandStart = new int[this.bands + 1];
+		for (int i = 0, j = npol - 1; i < npol; j = i++) {
+			if (yp[i] == yp[j]) continue;
+			int b0 = this.band(Math.min(yp[i], yp[j]));
+			int b1 = this.band(Math.max(yp[i], yp[j]));
+			for (int k = b0; k <= b1; k++) this.bandStart[k + 1]++;
+		}
+		for (int k = 0; k < this.bands; k++) this.bandStart[k + 1] += this.bandStart[k];
+		this.edgeIndex = new int[this.bandStart[this.bands]];
+		int[] fill = new int[this.bands];
+		for (int i = 0, j = npol - 1; i < npol; j = i++) {
+			if (yp[i] == yp[j]) continue;
+			int b0 = this.band(Math.min(yp[i], yp[j]));
+			int b1 = this.band(Math.max(yp[i], yp[j]));
+			for (int k = b0; k <= b1; k++) this.edgeIndex[this.bandStart[k] + fill[k]++] = i;
+		}
+	}
+
+	/**
+	 * @param xp     array of x-coordinates
+	 * @param yp     array of y-coordinates
+	 * @param npol   number of points in polygon
+	 * @return   a new PolygonLocator for the polygon
+	 */
+	public static PolygonLocator makePolygonLocator(float[] xp, float[] yp, int npol) {
+		return new PolygonLocator(xp, yp, npol);
+	}
+
+
+	private int band(float y) {
+		int k = (int) ((y - this.top) / this.bandHeight);
+		return (k < 0) ? 0 : (k >= this.bands) ? this.bands - 1 : k;
+	}
+
+	/**
+	 * @return   array of float: left, top, right, bottom coordinates of the polygon's bounding box
+	 */
+	public float[] bounds() {
+		return new float[] {this.left, this.top, this.right, this.bottom};
+	}
+
+	/**
+	 * decides if a point is inside the polygon
+	 * @param x      x-coordinate of point
+	 * @param y      y-coordinate of point
+	 * @return       true if point is in polygon, false otherwise
+	 */
+	public boolean contains(float x, float y) {
+		if (x < this.left || x > this.right || y < this.top || y > this.bottom || y != y) return false;
+		int b = this.band(y);
+		boolean inside = false;
+		float[] xp = this.xp, yp = this.yp;
+		for (int k = this.bandStart[b], end = this.bandStart[b + 1]; k < end; k++) {
+			int i = this.edgeIndex[k];
+			int j = (0 == i) ? this.npol - 1 : i - 1;
+			if (
+					(((yp[i] <= y) && (y < yp[j])) || ((yp[j] <= y) && (y < yp[i]))) &&
+					(x < (xp[j] - xp[i]) * (y - yp[i]) / (yp[j] - yp[i]) + xp[i])
+			)
+				inside = !inside;
+		}
+		return inside;
+	}
+
+	/**
+	 * Tests many points against the polygon in one sweep.
+	 * @param points   array of alternating x and y coordinates of points
+	 * @return   a BitSet in which bit k is set if point k, at {@code points[2k], points[2k + 1]}, is in the polygon
+	 */
+	public BitSet contains(float[] points) {
+		return this.contains(points, false);
+	}
+
+	/**
+	 * Tests many points against the polygon in one sweep, optionally dividing the points into runs of y-values
+	 * that are swept on separate threads of the common ForkJoinPool.
+	 * @param points       array of alternating x and y coordinates of points
+	 * @param isParallel   true to split large batches across threads
+	 * @return   a BitSet in which bit k is set if point k, at {@code points[2k], points[2k + 1]}, is in the polygon
+	 */
+	public BitSet contains(float[] points, boolean isParallel) {
+		int count = points.length / 2;
+		// sort the points inside the bounding box by y, keeping their indices in the low bits
+		long[] keys = new long[count];
+		int n = 0;
+		boolean isSorted = true;
+		for (int k = 0; k < count; k++) {
+			float x = points[2 * k], y = points[2 * k + 1];
+			if (x < this.left || x > this.right || y < this.top || y > this.bottom || y != y) continue;
+			keys[n] = ((long) sortableBits(y) << 32) | k;
+			if (n > 0 && keys[n] < keys[n - 1]) isSorted = false;
+			n++;
+		}
+		// points generated along scanlines usually arrive in order
+		if (!isSorted) Arrays.sort(keys, 0, n);
+		// edges in order of their upper ends, each the index of its second vertex
+		int edges = 0;
+		long[] byTop = new long[this.npol];
+		for (int i = 0, j = this.npol - 1; i < this.npol; j = i++) {
+			if (this.yp[i] == this.yp[j]) continue;
+			byTop[edges++] = ((long) sortableBits(Math.min(this.yp[i], this.yp[j])) << 32) | i;
+		}
+		Arrays.sort(byTop, 0, edges);
+		int[] edgeOrder = new int[edges];
+		for (int e = 0; e < edges; e++) edgeOrder[e] = (int) byTop[e];
+		boolean[] inside = new boolean[count];
+		int runs = (isParallel && n >= PARALLEL_THRESHOLD) ? Math.max(1, Math.min(64, n / (PARALLEL_THRESHOLD / 4))) : 1;
+		if (1 == runs) {
+			this.sweep(points, keys, 0, n, edgeOrder, inside);
+		}
+		else {
+			final int total = n;
+			final int parts = runs;
+			IntStream.range(0, parts).parallel().forEach(r -> 
+				this.sweep(points, keys, (int) ((long) total * r / parts), (int) ((long) total * (r + 1) / parts), edgeOrder, inside)
+			);
+		}
+		BitSet result = new BitSet(count);
+		for (int k = 0; k < count; k++) {
+			if (inside[k]) result.set(k);
+		}
+		return result;
+	}
+
+	/**
+	 * Sweeps sorted query points {@code keys[lo]} up to {@code keys[hi]} downward, keeping a list of the edges that span 
+	 * the current y, and tests each group of points with the same y against the sorted crossings of those edges.
+	 * Points that share their y with few others are tested with the band table instead.
+	 */
+	private void sweep(float[] points, long[] keys, int lo, int hi, int[] edgeOrder, boolean[] inside) {
+		float[] xp = this.xp, yp = this.yp;
+		int[] active = new int[16];
+		int activeCount = 0;
+		int nextEdge = 0;
+		float[] crossings = new float[16];
+		int q = lo;
+		while (q < hi) {
+			float y = points[2 * (int) keys[q] + 1];
+			int groupEnd = q + 1;
+			while (groupEnd < hi && points[2 * (int) keys[groupEnd] + 1] == y) groupEnd++;
+			if (groupEnd - q < SHARED_ROW_THRESHOLD) {
+				// too few points on this row to pay for sorting its crossings: use the band table
+				for (; q < groupEnd; q++) {
+					int k = (int) keys[q];
+					inside[k] = this.contains(points[2 * k], y);
+				}
+				continue;
+			}
+			// add edges whose upper end is at or above y
+			while (nextEdge < edgeOrder.length) {
+				int i = edgeOrder[nextEdge];
+				int j = (0 == i) ? this.npol - 1 : i - 1;
+				if (Math.min(yp[i], yp[j]) > y) break;
+				if (activeCount == active.length) active = Arrays.copyOf(active, activeCount * 2);
+				active[activeCount++] = i;
+				nextEdge++;
+			}
+			// drop edges whose lower end is at or above y, and compute crossings for the rest
+			int c = 0;
+			int kept = 0;
+			for (int a = 0; a < activeCount; a++) {
+				int i = active[a];
+				int j = (0 == i) ? this.npol - 1 : i - 1;
+				if (Math.max(yp[i], yp[j]) <= y) continue;
+				active[kept++] = i;
+				if (c == crossings.length) crossings = Arrays.copyOf(crossings, c * 2);
+				crossings[c++] = (xp[j] - xp[i]) * (y - yp[i]) / (yp[j] - yp[i]) + xp[i];
+			}
+			activeCount = kept;
+			Arrays.sort(crossings, 0, c);
+			for (; q < groupEnd; q++) {
+				int k = (int) keys[q];
+				float x = points[2 * k];
+				// a point is inside if an odd number of crossings lie to its right
+				int first = upperBound(crossings, c, x);
+				inside[k] = 1 == ((c - first) & 1);
+			}
+		}
+	}
+
+	/**
+	 * @return   index of the first of the first {@code n} sorted values that is greater than x
+	 */
+	private static int upperBound(float[] values, int n, float x) {
+		int lo = 0, hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (values[mid] > x) hi = mid;
+			else lo = mid + 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * @return   the bits of a float, flipped so that they sort in the same order as the float, as signed ints
+	 */
+	private static int sortableBits(float f) {
+		int bits = Float.floatToIntBits(f);
+		return (bits < 0) ? bits ^ 0x7fffffff : bits;
+	}
+
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ *
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ *
+ */
+package net.paulhertz.geom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Clips lines, polylines, polygons and paths of lines and cubic Bezier curves to an axis-aligned rectangle.
+ * <ul>
+ * <li>Each point gets a Cohen-Sutherland outcode, which accepts or rejects most segments with two bit operations.</li>
+ * <li>Lines that straddle the rectangle are clipped with the Liang-Barsky algorithm, which finds both ends of the
+ * visible part in one pass over the four edges.</li>
+ * <li>Cubic curves are split where they cross the edges, found by subdivision with
+ * {@link BezierUtils#cubicCrossings(float, float, float, float, float, float[]) cubicCrossings}, and the parts
+ * are extracted with {@link BezierUtils#subCurve(float[], float, float, float[]) subCurve}, so clipped curves
+ * are still the original curves, not approximations of them.</li>
+ * </ul>
+ * Open paths are cut into separate runs wherever they leave the rectangle. Closed paths, which may be filled, are clipped
+ * one edge at a time in the manner of Sutherland-Hodgman, joining the points where a path leaves and re-enters the
+ * rectangle with lines along its edge, so the result is a single closed path with the same fill.
+ * <p>
+ * Paths are lists of segments, a line as an array of 4 floats, x0, y0, x1, y1, and a cubic curve as an array of 8 floats,
+ * x0, y0, cx1, cy1, cx2, cy2, x1, y1. Segments in the results are new arrays, or segments of the input that lie entirely
+ * inside the rectangle.
+ * </p>
+ */
+public class RectClipper {
+	/** outcode of a point inside the rectangle */
+	public static final int INSIDE = 0;
+	/** outcode bit of a point to the left of the rectangle */
+	public static final int LEFT = 1;
+	/** outcode bit of a point to the right of the rectangle */
+	public static final int RIGHT = 2;
+	/** outcode bit of a point above the rectangle, with a smaller y-coordinate than its top */
+	public static final int TOP = 4;
+	/** outcode bit of a point below the rectangle, with a larger y-coordinate than its bottom */
+	public static final int BOTTOM = 8;
+	private final float left, top, right, bottom;
+
+
+	private RectClipper(float left, float top, float right, float bottom) {
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+	}
+
+	/**
+	 * @param left     left edge of the clipping rectangle
+	 * @param top      top edge, the smaller y-coordinate
+	 * @param right    right edge
+	 * @param bottom   bottom edge, the larger y-coordinate
+	 * @return   a new RectClipper
+	 */
+	public static RectClipper makeRectClipper(float left, float top, float right, float bottom) {
+		if (right < left || bottom < top) {
+			throw new IllegalArgumentException("Clipping rectangle has right < left or bottom < top.");
+		}
+		return new RectClipper(left, top, right, bottom);
+	}
+
+
+	/**
+	 * @return   array of float: left, top, right, bottom coordinates of the clipping rectangle
+	 */
+	public float[] bounds() {
+		return new float[] {this.left, this.top, this.right, this.bottom};
+	}
+
+	/**
+	 * @return   the Cohen-Sutherland outcode of a point, {@code INSIDE} or a combination of
+	 *           {@code LEFT}, {@code RIGHT}, {@code TOP} and {@code BOTTOM}
+	 */
+	public int outcode(float x, float y) {
+		int code = INSIDE;
+		if (x < this.left) code |= LEFT;
+		else if (x > this.right) code |= RIGHT;
+		if (y < this.top) code |= TOP;
+		else if (y > this.bottom) code |= BOTTOM;
+		return code;
+	}
+
+	/**
+	 * @return   the outcode of a box given by its left, top, right and bottom coordinates: {@code INSIDE} if it lies
+	 *           inside the rectangle, a non-zero code with a bit for each side it crosses or lies beyond otherwise.
+	 *           Combine with {@link #overlaps(float[])} to tell crossing from lying outside.
+	 */
+	public int outcode(float[] box) {
+		return this.outcode(box[0], box[1]) | this.outcode(box[2], box[3]);
+	}
+
+	/**
+	 * @param box   array of float: left, top, right, bottom coordinates
+	 * @return   true if the box and the clipping rectangle overlap
+	 */
+	public boolean overlaps(float[] box) {
+		return box[2] >= this.left && box[0] <= this.right && box[3] >= this.top && box[1] <= this.bottom;
+	}
+
+
+	/*----------------------------------------------------------------*/
+	/*                                                                */
+	/*     lines and polylines                                        */
+	/*                                                                */
+	/*----------------------------------------------------------------*/
+
+
+	/**
+	 * Clips a line to the rectangle, in place.
+	 * @param line   array of 4 floats, x0, y0, x1, y1, replaced by the ends of the visible part of the line
+	 *               if there is one, left unchanged otherwise
+	 * @return   true if part of the line is inside the rectangle
+	 */
+	public boolean clipLine(float[] line) {
+		int c0 = this.outcode(line[0], line[1]);
+		int c1 = this.outcode(line[2], line[3]);
+		if (0 == (c0 | c1)) return true;
+		if (0 != (c0 & c1)) return false;
+		float[] t = new float[2];
+		if (!this.liangBarsky(line[0], line[1], line[2], line[3], t)) return false;
+		float dx = line[2] - line[0], dy = line[3] - line[1];
+		float x0 = line[0], y0 = line[1];
+		if (t[1] < 1) {
+			line[2] = x0 + t[1] * dx;
+			line[3] = y0 + t[1] * dy;
+		}
+		if (t[0] > 0) {
+			line[0] = x0 + t[0] * dx;
+			line[1] = y0 + t[0] * dy;
+		}
+		return true;
+	}
+
+	/**
+	 * Liang-Barsky clipping: finds the range of the parameter t, from 0 to 1, over which the line from (x0, y0)
+	 * to (x1, y1) is inside the rectangle.
+	 * @param t   array of 2 floats for the start and end of the range
+	 * @return   true if the range is not empty
+	 */
+	private boolean liangBarsky(float x0, float y0, float x1, float y1, float[] t) {
+		float dx = x1 - x0, dy = y1 - y0;
+		float[] p = {-dx, dx, -dy, dy};
+		float[] q = {x0 - this.left, this.right - x0, y0 - this.top, this.bottom - y0};
+		float t0 = 0, t1 = 1;
+		for (int i = 0; i < 4; i++) {
+			if (0 == p[i]) {
+				// parallel to this edge: wholly outside or no limit
+				if (q[i] < 0) return false;
+				continue;
+			}
+			float r = q[i] / p[i];
+			if (p[i] < 0) {
+				if (r > t1) return false;
+				if (r > t0) t0 = r;
+			}
+			else {
+				if (r < t0) return false;
+				if (r < t1) t1 = r;
+			}
+		}
+		t[0] = t0;
+		t[1] = t1;
+		return true;
+	}
+
+	/**
+	 * Clips an open polyline to the rectangle, cutting it into separate runs where it leaves the rectangle.
+	 * @param points   array of alternating x and y coordinates
+	 * @return   list of runs, each an array of alternating x and y coordinates with at least two points
+	 */
+	public ArrayList<float[]> clipPolyline(float[] points) {
+		ArrayList<float[]> runs = new ArrayList<float[]>();
+		int n = points.length / 2;
+		float[] run = null;
+		int size = 0;
+		float[] t = new float[2];
+		int c0 = (n > 0) ? this.outcode(points[0], points[1]) : 0;
+		for (int i = 1; i < n; i++) {
+			float x0 = points[2 * i - 2], y0 = points[2 * i - 1];
+			float x1 = points[2 * i], y1 = points[2 * i + 1];
+			int c1 = this.outcode(x1, y1);
+			float t0 = 0, t1 = 1;
+			boolean isVisible;
+			if (0 == (c0 | c1)) {
+				isVisible = true;
+			}
+			else if (0 != (c0 & c1)) {
+				isVisible = false;
+			}
+			else {
+				isVisible = this.liangBarsky(x0, y0, x1, y1, t);
+				t0 = t[0];
+				t1 = t[1];
+			}
+			c0 = c1;
+			if (!isVisible || t0 > 0) {
+				// the polyline was outside before this point: finish the current run
+				if (null != run) runs.add(Arrays.copyOf(run, size));
+				run = null;
+				if (!isVisible) continue;
+			}
+			if (null == run) {
+				run = new float[16];
+				run[0] = x0 + t0 * (x1 - x0);
+				run[1] = y0 + t0 * (y1 - y0);
+				size = 2;
+			}
+			if (size + 2 > run.length) run = Arrays.copyOf(run, run.length * 2);
+			run[size++] = (t1 < 1) ? x0 + t1 * (x1 - x0) : x1;
+			run[size++] = (t1 < 1) ? y0 + t1 * (y1 - y0) : y1;
+			if (t1 < 1) {
+				runs.add(Arrays.copyOf(run, size));
+				run = null;
+			}
+		}
+		if (null != run) runs.add(Arrays.copyOf(run, size));
+		return runs;
+	}
+
+	/**
+	 * Clips a polygon to the rectangle with the Sutherland-Hodgman algorithm. Where a concave polygon leaves
+	 * the rectangle more than once, the result has edges along the rectangle joining the parts,
+	 * which enclose no area and do not change a fill.
+	 * @param points   array of alternating x and y coordinates, the polygon implicitly closed
+	 * @return   array of alternating x and y coordinates of the clipped polygon, empty if it lies outside the rectangle
+	 */
+	public float[] clipPolygon(float[] points) {
+		float[] poly = points;
+		for (int edge = 0; edge < 4 && poly.length > 0; edge++) {
+			poly = this.clipPolygon(poly, edge);
+		}
+		return poly;
+	}
+
+	private float[] clipPolygon(float[] poly, int edge) {
+		int n = poly.length / 2;
+		int axis = edge & 1;
+		float value = this.edgeValue(edge);
+		float[] out = new float[poly.length + 8];
+		int size = 0;
+		float px = poly[2 * n - 2], py = poly[2 * n - 1];
+		boolean pIn = this.isInside(edge, (0 == axis) ? px : py);
+		for (int i = 0; i < n; i++) {
+			float x = poly[2 * i], y = poly[2 * i + 1];
+			boolean in = this.isInside(edge, (0 == axis) ? x : y);
+			if (in != pIn) {
+				// add the crossing of the edge
+				float a = (0 == axis) ? px : py, b = (0 == axis) ? x : y;
+				float s = (value - a) / (b - a);
+				if (size + 2 > out.length) out = Arrays.copyOf(out, out.length * 2);
+				out[size++] = (0 == axis) ? value : px + s * (x - px);
+				out[size++] = (0 == axis) ? py + s * (y - py) : value;
+			}
+			if (in) {
+				if (size + 2 > out.length) out = Arrays.copyOf(out, out.length * 2);
+				out[size++] = x;
+				out[size++] = y;
+			}
+			px = x;
+			py = y;
+			pIn = in;
+		}
+		return Arrays.copyOf(out, size);
+	}
+
+
+	/*----------------------------------------------------------------*/
+	/*                                                                */
+	/*     paths of lines and cubic curves                            */
+	/*                                                                */
+	/*----------------------------------------------------------------*/
+
+
+	/**
+	 * Clips an open path of lines and cubic curves to the rectangle, cutting it into separate runs where it leaves the rectangle.
+	 * @param segments   the path, a list of segments, each ending where the next one starts
+	 * @return   list of runs, each a list of segments
+	 */
+	public ArrayList<ArrayList<float[]>> clipOpenPath(List<float[]> segments) {
+		ArrayList<ArrayList<float[]>> runs = new ArrayList<ArrayList<float[]>>();
+		ArrayList<float[]> run = null;
+		float[] t = new float[14];
+		for (float[] seg : segments) {
+			int count = this.pieces(seg, t);
+			for (int k = 0; k < count - 1; k++) {
+				float[] piece = null;
+				if (0 == k && 2 == count) {
+					// not cut: the whole segment is inside or outside
+					if (this.isInside(seg, 0, 1)) piece = seg;
+				}
+				else if (this.isInside(seg, t[k], t[k + 1])) {
+					piece = part(seg, t[k], t[k + 1]);
+				}
+				if (null == piece) {
+					if (null != run) runs.add(run);
+					run = null;
+				}
+				else {
+					if (null == run) run = new ArrayList<float[]>();
+					run.add(piece);
+				}
+			}
+		}
+		if (null != run) runs.add(run);
+		return runs;
+	}
+
+	/**
+	 * Collects the parameter values at which a segment crosses the edges of the rectangle, with 0 and 1,
+	 * in increasing order, unless outcodes show the segment needs no cutting.
+	 * @param t   array for up to 14 parameter values
+	 * @return   number of parameter values in {@code t}
+	 */
+	private int pieces(float[] seg, float[] t) {
+		int codeAnd = ~0, codeOr = 0;
+		for (int i = 0; i < seg.length; i += 2) {
+			int c = this.outcode(seg[i], seg[i + 1]);
+			codeAnd &= c;
+			codeOr |= c;
+		}
+		t[0] = 0;
+		int count = 1;
+		// every point, control points included, inside or beyond the same side: nothing to cut
+		if (0 != codeOr && 0 == codeAnd) {
+			float[] hits = new float[3];
+			for (int edge = 0; edge < 4; edge++) {
+				// only edges some point lies beyond can be crossed
+				if (0 == (codeOr & edgeBit(edge))) continue;
+				int h = crossings(seg, edge & 1, this.edgeValue(edge), hits);
+				for (int j = 0; j < h; j++) t[count++] = hits[j];
+			}
+			Arrays.sort(t, 1, count);
+			// a curve through a corner crosses two edges at once
+			int kept = 1;
+			for (int j = 1; j < count; j++) {
+				if (t[j] - t[kept - 1] > 1.0e-6f) t[kept++] = t[j];
+			}
+			count = kept;
+		}
+		t[count++] = 1;
+		return count;
+	}
+
+	/**
+	 * Clips a closed path of lines and cubic curves to the rectangle, one edge at a time. Where the path leaves and
+	 * re-enters the rectangle, the points are joined by a line along the edge, so the result is a single closed path
+	 * that encloses the part of the area of the path that lies in the rectangle.
+	 * @param segments   the path, a list of segments, each ending where the next one starts; a line is added to
+	 *                   close it if it does not end where it starts
+	 * @return   the clipped closed path, empty if no part of the path is inside the rectangle
+	 */
+	public ArrayList<float[]> clipClosedPath(List<float[]> segments) {
+		ArrayList<float[]> path = new ArrayList<float[]>(segments);
+		if (path.isEmpty()) return path;
+		float[] first = path.get(0);
+		float[] last = path.get(path.size() - 1);
+		int n = last.length;
+		if (last[n - 2] != first[0] || last[n - 1] != first[1]) {
+			path.add(new float[] {last[n - 2], last[n - 1], first[0], first[1]});
+		}
+		for (int edge = 0; edge < 4 && !path.isEmpty(); edge++) {
+			path = this.clipClosedPath(path, edge);
+		}
+		return path;
+	}
+
+	private ArrayList<float[]> clipClosedPath(ArrayList<float[]> path, int edge) {
+		ArrayList<float[]> out = new ArrayList<float[]>(path.size() + 4);
+		int axis = edge & 1;
+		float value = this.edgeValue(edge);
+		float[] hits = new float[3];
+		float[] t = new float[5];
+		float lastX = 0, lastY = 0;
+		for (float[] seg : path) {
+			boolean allIn = true, allOut = true;
+			for (int i = axis; i < seg.length; i += 2) {
+				if (this.isInside(edge, seg[i])) allOut = false;
+				else allIn = false;
+			}
+			if (allOut) continue;
+			int count;
+			t[0] = 0;
+			if (allIn) {
+				count = 2;
+			}
+			else {
+				count = 1 + crossings(seg, axis, value, hits);
+				for (int j = 1; j < count; j++) t[j] = hits[j - 1];
+				count++;
+			}
+			t[count - 1] = 1;
+			for (int k = 0; k < count - 1; k++) {
+				float[] piece;
+				if (allIn) {
+					piece = seg;
+				}
+				else {
+					float tm = (t[k] + t[k + 1]) / 2;
+					if (!this.isInside(edge, coordAt(seg, axis, tm))) continue;
+					piece = part(seg, t[k], t[k + 1]);
+					// put the ends that were cut exactly on the edge
+					if (k > 0) piece[axis] = value;
+					if (k < count - 2) piece[piece.length - 2 + axis] = value;
+				}
+				// a gap since the last piece kept is where the path went outside: follow the edge
+				if (!out.isEmpty() && (piece[0] != lastX || piece[1] != lastY)) {
+					out.add(new float[] {lastX, lastY, piece[0], piece[1]});
+				}
+				out.add(piece);
+				lastX = piece[piece.length - 2];
+				lastY = piece[piece.length - 1];
+			}
+		}
+		if (!out.isEmpty()) {
+			float[] first = out.get(0);
+			if (first[0] != lastX || first[1] != lastY) {
+				out.add(new float[] {lastX, lastY, first[0], first[1]});
+			}
+		}
+		return out;
+	}
+
+
+	/**
+	 * @return   the outcode bit of an edge: 0 left, 1 top, 2 right, 3 bottom
+	 */
+	private static int edgeBit(int edge) {
+		switch (edge) {
+		case 0: return LEFT;
+		case 1: return TOP;
+		case 2: return RIGHT;
+		default: return BOTTOM;
+		}
+	}
+
+	/**
+	 * @return   the x-coordinate of the left or right edge, or the y-coordinate of the top or bottom edge.
+	 *           Edges are numbered so that {@code edge & 1} is 0 for x and 1 for y.
+	 */
+	private float edgeValue(int edge) {
+		switch (edge) {
+		case 0: return this.left;
+		case 1: return this.top;
+		case 2: return this.right;
+		default: return this.bottom;
+		}
+	}
+
+	/**
+	 * @return   true if a coordinate is on the inside of an edge, or on it
+	 */
+	private boolean isInside(int edge, float v) {
+		return (edge < 2) ? v >= this.edgeValue(edge) : v <= this.edgeValue(edge);
+	}
+
+	/**
+	 * @return   true if the point halfway between t0 and t1 on a segment is inside the rectangle, or on its edge
+	 */
+	private boolean isInside(float[] seg, float t0, float t1) {
+		float tm = (t0 + t1) / 2;
+		return INSIDE == this.outcode(coordAt(seg, 0, tm), coordAt(seg, 1, tm));
+	}
+
+	/**
+	 * @return   number of parameter values strictly between 0 and 1 at which a segment crosses
+	 *           the line where its x (axis 0) or y (axis 1) coordinate equals value
+	 */
+	private static int crossings(float[] seg, int axis, float value, float[] out) {
+		if (4 == seg.length) {
+			float a = seg[axis], b = seg[2 + axis];
+			if ((a < value && b > value) || (a > value && b < value)) {
+				out[0] = (value - a) / (b - a);
+				return 1;
+			}
+			return 0;
+		}
+		return BezierUtils.cubicCrossings(seg[axis], seg[2 + axis], seg[4 + axis], seg[6 + axis], value, out);
+	}
+
+	/**
+	 * @return   the x (axis 0) or y (axis 1) coordinate of a segment at parameter t
+	 */
+	private static float coordAt(float[] seg, int axis, float t) {
+		if (4 == seg.length) return GeomUtils.lerp(t, seg[axis], seg[2 + axis]);
+		return BezierUtils.bezierPoint(seg[axis], seg[2 + axis], seg[4 + axis], seg[6 + axis], t);
+	}
+
+	/**
+	 * @return   a new segment, the part of a segment between t0 and t1
+	 */
+	private static float[] part(float[] seg, float t0, float t1) {
+		int n = seg.length;
+		float[] out;
+		if (4 == n) {
+			out = new float[] {
+				GeomUtils.lerp(t0, seg[0], seg[2]), GeomUtils.lerp(t0, seg[1], seg[3]),
+				GeomUtils.lerp(t1, seg[0], seg[2]), GeomUtils.lerp(t1, seg[1], seg[3])
+			};
+		}
+		else {
+			out = new float[8];
+			BezierUtils.subCurve(seg, t0, t1, out);
+		}
+		// keep uncut ends exact, so they still meet the neighboring segments
+		if (0 == t0) {
+			out[0] = seg[0];
+			out[1] = seg[1];
+		}
+		if (1 == t1) {
+			out[n - 2] = seg[n - 2];
+			out[n - 1] = seg[n - 1];
+		}
+		return out;
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2011, Paul Hertz This library is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; either version
+ * 3.0 of the License, or (at your option) any later version.
+ * http://www.gnu.org/licenses/lgpl.html This library is distributed in
+ * the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See
+ * the GNU Lesser General Public License for more details. You should have
+ * received a copy of the GNU Lesser General Public License along with this
+ * library; if not, write to the Free Software Foundation, Inc., 51 Franklin St,
+ * Fifth Floor, Boston, MA 02110-1301, USA
+ * 
+ * @author		##author##
+ * @modified	##date##
+ * @version		##version##
+ * 
+ */
+
+
+package net.paulhertz.aifile;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+/**
+ * Checks {@link BezShape#fitCurves(float)}: dense polylines are replaced by fewer curves that stay within
+ * the tolerance, and runs of lines that curve fitting cannot improve are left alone.
+ * Run by the {@code test} target of {@code resources/build.xml}, or by hand with the library and Processing core 
+ * on the classpath; exits with an error if a check fails.
+ */
+public class BezShapeFitCurvesTest {
+
+	public static void main(String[] args) {
+		PApplet app = new PApplet();
+		app.g = new PGraphics();
+		fitCurvesStaysWithinTolerance(app);
+		fitCurvesLeavesRunOnOnePoint(app);
+		fitCurvesLeavesRunOnOnePointBetweenCurves(app);
+		System.out.println("BezShapeFitCurvesTest passed");
+	}
+
+	/**
+	 * A dense polyline along a sine wave is replaced by fewer vertices, and every point of the polyline 
+	 * lies within the tolerance of the fitted curves.
+	 */
+	static void fitCurvesStaysWithinTolerance(PApplet app) {
+		float tolerance = 0.5f;
+		int n = 400;
+		float[] points = new float[2 * n];
+		for (int i = 0; i < n; i++) {
+			points[2 * i] = i * 1.5f;
+			points[2 * i + 1] = 100 + 40 * (float) Math.sin(i * 1.5f / 45);
+		}
+		BezShape shape = new BezShape(app, points[0], points[1], false);
+		for (int i = 1; i < n; i++) {
+			shape.append(points[2 * i], points[2 * i + 1]);
+		}
+		int removed = shape.fitCurves(tolerance);
+		check(removed > 0, "expected vertices to be removed, got " + removed);
+		check(shape.size() < n - 1, "expected fewer than " + (n - 1) + " vertices, got " + shape.size());
+		// compare against a polygon much closer to the curves than the tolerance
+		float flatness = 0.01f;
+		shape.setFlatness(flatness);
+		float[] poly = shape.asPolygon();
+		for (int i = 0; i < n; i++) {
+			float d = distanceToPolyline(points[2 * i], points[2 * i + 1], poly);
+			check(d <= tolerance + flatness, "point " + i + " is " + d + " from the fitted curves, tolerance is " + tolerance);
+		}
+	}
+
+	/**
+	 * @return   distance from a point to the nearest line of a polyline given as alternating x and y coordinates
+	 */
+	private static float distanceToPolyline(float x, float y, float[] poly) {
+		double best = Double.MAX_VALUE;
+		for (int i = 0; i + 3 < poly.length; i += 2) {
+			double dx = poly[i + 2] - poly[i], dy = poly[i + 3] - poly[i + 1];
+			double len2 = dx * dx + dy * dy;
+			double t = (0 == len2) ? 0 : ((x - poly[i]) * dx + (y - poly[i + 1]) * dy) / len2;
+			t = Math.max(0, Math.min(1, t));
+			double ex = poly[i] + t * dx - x, ey = poly[i + 1] + t * dy - y;
+			best = Math.min(best, ex * ex + ey * ey);
+		}
+		return (float) Math.sqrt(best);
+	}
+
+	/**
+	 * A run of lines that all sit on one point, as from a turtle that stamps in place, is left unchanged.
+	 */
+	static void fitCurvesLeavesRunOnOnePoint(PApplet app) {
+		BezShape shape = new BezShape(app, 5, 5, false);
+		for (int i = 0; i < 6; i++) {
+			shape.append(5, 5);
+		}
+		int removed = shape.fitCurves(0.5f);
+		check(0 == removed, "expected no vertices removed, got " + removed);
+		check(6 == shape.size(), "expected 6 vertices, got " + shape.size());
+	}
+
+	/**
+	 * A run on one point between curves is left unchanged, and does not stop the rest of the shape from being fitted.
+	 */
+	static void fitCurvesLeavesRunOnOnePointBetweenCurves(PApplet app) {
+		BezShape shape = new BezShape(app, 0, 0, false);
+		shape.append(10, -10, 20, 10, 30, 0);
+		for (int i = 0; i < 5; i++) {
+			shape.append(30, 0);
+		}
+		shape.append(40, -10, 50, 10, 60, 0);
+		int size = shape.size();
+		int removed = shape.fitCurves(0.5f);
+		check(0 == removed, "expected no vertices removed, got " + removed);
+		check(size == shape.size(), "expected " + size + " vertices, got " + shape.size());
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) throw new AssertionError(message);
+	}
+
+}